@@ -0,0 +1,479 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A book table that watches its own workload and moves its contents to the
+ * layout that suits it:
+ * 
+ *   CHAINED (BookHashTable, scheme 5) while a good share of the calls are writes,
+ *   since an insert only appends to a chain;
+ *   OPEN_ADDRESSING (SwissBookHashTable, scheme 11) when writes are few but the
+ *   chains have grown long or many lookups miss, since a miss then walks a
+ *   whole chain;
+ *   FROZEN (FrozenBookHashTable, scheme 10) when there are almost no writes,
+ *   with one probe per lookup and a fingerprint that rejects most misses.
+ * 
+ * A sampler thread looks at the mix of calls since its last look every sample
+ * period. When two samples in a row call for another layout, it copies the
+ * books into a new table of that layout and switches to it. The frozen layout
+ * takes no writes: the odd write while frozen goes to a small overlay that
+ * lookups check first, and only a write that finds the overlay full moves the
+ * table back to the chained layout on the spot. Each such thaw doubles the
+ * number of read only samples needed before the table freezes again, up to
+ * MAX_FREEZE_SAMPLES, so a steady trickle of writes does not copy the whole
+ * table over and over; a freeze that holds halves it again.
+ * 
+ * Books are stored under their own keys, so that any layout can be rebuilt
+ * from the books alone.
+ * 
+ * Reads never wait for a migration: a migration keeps writers out while it
+ * copies, but not readers, who keep using the old table until the new one is
+ * published. Reads share a read lock and writes take the write lock, so reads
+ * only ever wait for a write in progress.
+ */
+public class AdaptiveBookTable implements HashTableADT<String, Book>, AutoCloseable {
+    public static final int CHAINED = 5;
+    public static final int OPEN_ADDRESSING = 11;
+    public static final int FROZEN = 10;
+
+    // share of writes at or above which the chained layout is used
+    static final double WRITE_HEAVY = 0.10;
+    // share of writes at or below which the table is frozen
+    static final double READ_ONLY = 0.001;
+    // in between, a chained table moves to open addressing past these
+    static final double LONG_CHAINS = 1.5;
+    static final double MANY_MISSES = 0.25;
+    // fewer calls than this in a sample tell nothing
+    static final int MIN_SAMPLE = 256;
+    // buckets looked at to estimate the chain length
+    static final int CHAIN_SAMPLE_BUCKETS = 1024;
+    // most keys written while frozen before the table thaws
+    static final int OVERLAY_LIMIT = 64;
+    // most read only samples in a row needed to freeze, after repeated thaws
+    static final int MAX_FREEZE_SAMPLES = 16;
+
+    /**
+     * What the table last saw and did
+     */
+    public static class Profile {
+        private final int layout;
+        private final long gets;
+        private final long misses;
+        private final long writes;
+        private final double averageChainLength;
+        private final long migrations;
+        private final long lastMigrationNanos;
+
+        Profile(int layout, long gets, long misses, long writes, double averageChainLength,
+                long migrations, long lastMigrationNanos) {
+            this.layout = layout;
+            this.gets = gets;
+            this.misses = misses;
+            this.writes = writes;
+            this.averageChainLength = averageChainLength;
+            this.migrations = migrations;
+            this.lastMigrationNanos = lastMigrationNanos;
+        }
+
+        /**
+         * CHAINED, OPEN_ADDRESSING or FROZEN
+         */
+        public int getLayout() {
+            return layout;
+        }
+
+        /**
+         * the share of writes among the calls of the last sample
+         */
+        public double getWriteShare() {
+            long calls = gets + writes;
+            return calls == 0 ? 0 : (double) writes / calls;
+        }
+
+        /**
+         * the share of gets of the last sample that missed
+         */
+        public double getMissRate() {
+            return gets == 0 ? 0 : (double) misses / gets;
+        }
+
+        /**
+         * the estimated average chain length at the last sample, 0 unless the
+         * table was chained and the share of writes left the layout open
+         */
+        public double getAverageChainLength() {
+            return averageChainLength;
+        }
+
+        public long getMigrations() {
+            return migrations;
+        }
+
+        /**
+         * how long the last migration copied for
+         */
+        public long getLastMigrationNanos() {
+            return lastMigrationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("layout %s, writes %.1f%%, misses %.1f%%, chains %.2f,"
+                    + " %d migrations, last %.2f ms", name(layout), getWriteShare() * 100,
+                    getMissRate() * 100, averageChainLength, migrations,
+                    lastMigrationNanos / 1e6);
+        }
+    }
+
+    private volatile ScannableBookTable current = new BookHashTable();
+    private volatile int layout = CHAINED;
+    // the writes made while frozen, by key; a null book marks a removed key
+    private final HashMap<String, Book> overlay = new HashMap<>();
+    // the number of keys the overlay adds to the frozen table, negative if it removes
+    private int overlayKeys;
+    // readers share it, a writer takes it alone
+    private final ReentrantReadWriteLock access = new ReentrantReadWriteLock();
+    // held by writers and by a migration, so nothing changes while it copies
+    private final ReentrantLock mutex = new ReentrantLock();
+
+    // calls since the last sample
+    private final LongAdder gets = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    // the layout the last sample asked for, and for how many samples in a row
+    private int wanted = CHAINED;
+    private int wantedSamples;
+    // samples in a row needed to freeze, and how many the current freeze has held
+    private int freezeSamples = 2;
+    private int frozenSamples;
+    // the last sample; its migration counts are not kept up to date
+    private Profile sample = new Profile(CHAINED, 0, 0, 0, 0, 0, 0);
+    private long migrations;
+    private long lastMigrationNanos;
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * Sample the workload every 100 ms
+     */
+    public AdaptiveBookTable() {
+        this(100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param samplePeriod how often the workload is sampled; 0 to only sample
+     * when tune() is called
+     */
+    public AdaptiveBookTable(long samplePeriod, TimeUnit unit) {
+        if (samplePeriod < 0) {
+            throw new IllegalArgumentException("the sample period can not be negative");
+        }
+        if (samplePeriod == 0) {
+            sampler = null;
+        } else {
+            sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "adaptive-book-table-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sampler.scheduleWithFixedDelay(this::tune, samplePeriod, samplePeriod, unit);
+        }
+    }
+
+    static String name(int layout) {
+        switch (layout) {
+            case CHAINED:
+                return "CHAINED";
+            case OPEN_ADDRESSING:
+                return "OPEN_ADDRESSING";
+            case FROZEN:
+                return "FROZEN";
+            default:
+                return "unknown";
+        }
+    }
+
+    @Override
+    public void insert(String key, Book value)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (value == null || !key.equals(value.getKey())) {
+            throw new IllegalArgumentException("the book must be stored under its own key");
+        }
+        writes.increment();
+        mutex.lock();
+        try {
+            boolean frozen = writable(key);
+            access.writeLock().lock();
+            try {
+                if (!frozen) {
+                    current.insert(key, value);
+                } else if (overlay.containsKey(key) ? overlay.get(key) != null
+                        : current.lookup(key) != null) {
+                    throw new DuplicateKeyException();
+                } else {
+                    overlay.put(key, value);
+                    overlayKeys++;
+                }
+            } finally {
+                access.writeLock().unlock();
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        writes.increment();
+        mutex.lock();
+        try {
+            boolean frozen = writable(key);
+            access.writeLock().lock();
+            try {
+                if (!frozen) {
+                    return current.remove(key);
+                }
+                boolean present = overlay.containsKey(key) ? overlay.get(key) != null
+                        : current.lookup(key) != null;
+                if (present) {
+                    // a tombstone only where the frozen table still has the key
+                    if (current.lookup(key) != null) {
+                        overlay.put(key, null);
+                    } else {
+                        overlay.remove(key);
+                    }
+                    overlayKeys--;
+                }
+                return present;
+            } finally {
+                access.writeLock().unlock();
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        Book book = lookup(key);
+        if (book == null) {
+            throw new KeyNotFoundException();
+        }
+        return book;
+    }
+
+    /**
+     * Find a book without throwing for absent keys
+     * @return the book, or null if the key is not in the table
+     */
+    public Book lookup(CharSequence key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        gets.increment();
+        Book book;
+        access.readLock().lock();
+        try {
+            // only a frozen table with writes pays for the String
+            String written = overlay.isEmpty() ? null : key.toString();
+            book = written != null && overlay.containsKey(written) ? overlay.get(written)
+                    : current.lookup(key);
+        } finally {
+            access.readLock().unlock();
+        }
+        if (book == null) {
+            misses.increment();
+        }
+        return book;
+    }
+
+    @Override
+    public int numKeys() {
+        access.readLock().lock();
+        try {
+            return current.numKeys() + overlayKeys;
+        } finally {
+            access.readLock().unlock();
+        }
+    }
+
+    @Override
+    public double getLoadFactorThreshold() {
+        return current.getLoadFactorThreshold();
+    }
+
+    @Override
+    public int getCapacity() {
+        return current.getCapacity();
+    }
+
+    /**
+     * return the scheme of the current layout: CHAINED (5), OPEN_ADDRESSING (11)
+     * or FROZEN (10); it changes as the table adapts
+     */
+    @Override
+    public int getCollisionResolutionScheme() {
+        return layout;
+    }
+
+    /**
+     * the workload of the last sample and the migrations so far
+     */
+    public Profile getProfile() {
+        mutex.lock();
+        try {
+            return new Profile(layout, sample.gets, sample.misses, sample.writes,
+                    sample.averageChainLength, migrations, lastMigrationNanos);
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Take a sample of the calls since the last one and migrate if two samples
+     * in a row asked for another layout, or more to freeze after a thaw. Run by
+     * the sampler thread; callable directly when the table samples on demand
+     * only.
+     * @return the layout after this sample
+     */
+    public int tune() {
+        long g = gets.sumThenReset();
+        long m = misses.sumThenReset();
+        long w = writes.sumThenReset();
+        mutex.lock();
+        try {
+            double writeShare = g + w == 0 ? 0 : (double) w / (g + w);
+            // writers wait while this runs, so the chains are only looked at when
+            // they can change the outcome, and then only in a sample of buckets
+            double chains = layout == CHAINED && g + w >= MIN_SAMPLE
+                    && writeShare > READ_ONLY && writeShare < WRITE_HEAVY
+                    ? ((BookHashTable) current).averageChainLength(CHAIN_SAMPLE_BUCKETS) : 0;
+            if (g + w >= MIN_SAMPLE) {
+                int target = choose(writeShare, g == 0 ? 0 : (double) m / g, chains);
+                int needed = target == FROZEN ? freezeSamples : 2;
+                if (target == layout) {
+                    wantedSamples = 0;
+                    // a freeze that held as long as it took to reach relaxes the backoff
+                    if (layout == FROZEN && ++frozenSamples >= freezeSamples) {
+                        freezeSamples = Math.max(2, freezeSamples / 2);
+                        frozenSamples = 0;
+                    }
+                } else if (target == wanted && ++wantedSamples >= needed) {
+                    migrate(target);
+                    wantedSamples = 0;
+                } else if (target != wanted) {
+                    wanted = target;
+                    wantedSamples = 1;
+                }
+            }
+            sample = new Profile(layout, g, m, w, chains, migrations, lastMigrationNanos);
+            return layout;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    // the layout for a sample
+    private int choose(double writeShare, double missRate, double averageChainLength) {
+        if (writeShare >= WRITE_HEAVY) {
+            return CHAINED;
+        }
+        if (writeShare <= READ_ONLY) {
+            return FROZEN;
+        }
+        if (layout == CHAINED && averageChainLength <= LONG_CHAINS && missRate <= MANY_MISSES) {
+            // the chains are short enough, moving would not pay
+            return CHAINED;
+        }
+        return OPEN_ADDRESSING;
+    }
+
+    // with the mutex held: make room for a write of key; true if it goes to the
+    // overlay, false if the table is, or has just been, moved to a writable layout
+    private boolean writable(String key) {
+        if (layout != FROZEN) {
+            return false;
+        }
+        if (overlay.size() < OVERLAY_LIMIT || overlay.containsKey(key)) {
+            return true;
+        }
+        migrate(CHAINED);
+        // thawed by writes: wait longer before freezing again
+        freezeSamples = Math.min(MAX_FREEZE_SAMPLES, freezeSamples * 2);
+        return false;
+    }
+
+    // with the mutex held: copy everything, with the overlay applied, into a table
+    // of the target layout and publish it; readers keep using the old table and
+    // overlay meanwhile, nothing writes to them
+    private void migrate(int target) {
+        long start = System.nanoTime();
+        ScannableBookTable from = current;
+        ArrayList<Book> books = new ArrayList<>(from.numKeys() + overlayKeys);
+        if (overlay.isEmpty()) {
+            from.scanBuckets(0, from.bucketCount(), books::add);
+        } else {
+            from.scanBuckets(0, from.bucketCount(), book -> {
+                if (!overlay.containsKey(book.getKey())) {
+                    books.add(book);
+                }
+            });
+            for (Book book : overlay.values()) {
+                if (book != null) {
+                    books.add(book);
+                }
+            }
+        }
+        // room to grow before the first resize
+        int capacity = Math.max(16, books.size() * 2);
+        ScannableBookTable to;
+        try {
+            if (target == FROZEN) {
+                to = new FrozenBookHashTable(books);
+            } else {
+                to = target == CHAINED ? new BookHashTable(capacity, 0.75)
+                        : new SwissBookHashTable(capacity,
+                                SwissBookHashTable.DEFAULT_LOAD_FACTOR_THRESHOLD);
+                for (Book book : books) {
+                    to.insert(book.getKey(), book);
+                }
+            }
+        } catch (IllegalNullKeyException | DuplicateKeyException e) {
+            // cannot happen, the keys come from a table
+            throw new IllegalStateException(e);
+        }
+        access.writeLock().lock();
+        try {
+            current = to;
+            overlay.clear();
+            overlayKeys = 0;
+        } finally {
+            access.writeLock().unlock();
+        }
+        layout = target;
+        frozenSamples = 0;
+        migrations++;
+        lastMigrationNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Stop the sampler thread, if any
+     */
+    @Override
+    public void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the layout changes of AdaptiveBookTable, sampling on demand
+ */
+public class AdaptiveBookTableTest {
+
+    static ArrayList<Book> books;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    private static AdaptiveBookTable loaded() throws Exception {
+        AdaptiveBookTable table = new AdaptiveBookTable(0, null);
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        return table;
+    }
+
+    private static void readAll(AdaptiveBookTable table) throws Exception {
+        for (Book book : books) {
+            assertSame(book, table.get(book.getKey()));
+        }
+    }
+
+    /**
+     * Check that a write burst stays chained, a read only phase freezes the table
+     * after two samples, and the odd write while frozen goes to the overlay
+     * without moving the table
+     */
+    @Test
+    public void test001_freeze_and_thaw() throws Exception {
+        try (AdaptiveBookTable table = loaded()) {
+            assertEquals(AdaptiveBookTable.CHAINED, table.tune());
+            readAll(table);
+            // one sample is not enough to migrate
+            assertEquals(AdaptiveBookTable.CHAINED, table.tune());
+            readAll(table);
+            assertEquals(AdaptiveBookTable.FROZEN, table.tune());
+            assertEquals(10, table.getCollisionResolutionScheme());
+            readAll(table);
+            assertEquals(books.size(), table.numKeys());
+
+            Book book = books.get(0);
+            assertTrue(table.remove(book.getKey()));
+            assertEquals(10, table.getCollisionResolutionScheme());
+            assertEquals(books.size() - 1, table.numKeys());
+            assertEquals(null, table.lookup(book.getKey()));
+            assertFalse(table.remove(book.getKey()));
+            table.insert(book.getKey(), book);
+            try {
+                table.insert(book.getKey(), book);
+                fail("DuplicateKeyException is not thrown");
+            } catch (DuplicateKeyException e) {
+            }
+            try {
+                table.insert(books.get(1).getKey(), books.get(1));
+                fail("DuplicateKeyException is not thrown");
+            } catch (DuplicateKeyException e) {
+            }
+            readAll(table);
+            assertEquals(books.size(), table.numKeys());
+            assertEquals(10, table.getCollisionResolutionScheme());
+            assertEquals(1, table.getProfile().getMigrations());
+        }
+    }
+
+    /**
+     * Check that a read mostly phase with many misses moves to open addressing,
+     * and a write heavy one back to chaining
+     */
+    @Test
+    public void test002_open_addressing_for_misses() throws Exception {
+        try (AdaptiveBookTable table = loaded()) {
+            table.tune();
+            for (int sample = 0; sample < 2; sample++) {
+                for (int i = 0; i < 2000; i++) {
+                    // 40% misses, 2% writes
+                    table.lookup(i % 5 < 2 ? "missing" + i : books.get(i).getKey());
+                    if (i % 50 == 0) {
+                        table.remove(books.get(i).getKey());
+                        table.insert(books.get(i).getKey(), books.get(i));
+                    }
+                }
+                table.tune();
+            }
+            assertEquals(AdaptiveBookTable.OPEN_ADDRESSING, table.getCollisionResolutionScheme());
+            AdaptiveBookTable.Profile profile = table.getProfile();
+            assertTrue(profile.getMissRate() > 0.3, profile.toString());
+            readAll(table);
+
+            for (int sample = 0; sample < 2; sample++) {
+                for (int i = 0; i < 500; i++) {
+                    table.remove(books.get(i).getKey());
+                    table.insert(books.get(i).getKey(), books.get(i));
+                }
+                table.tune();
+            }
+            assertEquals(AdaptiveBookTable.CHAINED, table.getCollisionResolutionScheme());
+            readAll(table);
+        }
+    }
+
+    /**
+     * Check that readers always find every book while the table migrates back
+     * and forth under them
+     */
+    @Test
+    public void test003_readers_during_migrations() throws Exception {
+        try (AdaptiveBookTable table = loaded()) {
+            AtomicBoolean done = new AtomicBoolean();
+            List<Throwable> errors = new ArrayList<>();
+            ArrayList<Thread> readers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        // the first 100 books are rewritten below, the rest never change
+                        for (int i = 100; !done.get(); i = i + 1 < books.size() ? i + 1 : 100) {
+                            assertSame(books.get(i), table.get(books.get(i).getKey()));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+            for (int round = 0; round < 10; round++) {
+                // the sample with the writes, then the readers alone until the
+                // table freezes, which takes longer after every thaw
+                for (int sample = 0; sample <= AdaptiveBookTable.MAX_FREEZE_SAMPLES
+                        && table.getCollisionResolutionScheme() != AdaptiveBookTable.FROZEN;
+                        sample++) {
+                    Thread.sleep(5);
+                    table.tune();
+                }
+                // more writes than the overlay holds thaw
+                for (int i = 0; i < 100; i++) {
+                    table.remove(books.get(i).getKey());
+                    table.insert(books.get(i).getKey(), books.get(i));
+                }
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertTrue(errors.isEmpty(), "reader errors: " + errors);
+            assertTrue(table.getProfile().getMigrations() >= 10,
+                    table.getProfile().toString());
+            assertEquals(books.size(), table.numKeys());
+        }
+    }
+
+    /**
+     * Check that a write that finds the overlay full thaws the table with every
+     * overlay write kept, and that the next freeze waits for more samples
+     */
+    @Test
+    public void test004_thaw_backs_off_the_next_freeze() throws Exception {
+        try (AdaptiveBookTable table = loaded()) {
+            for (int sample = 0; sample < 3; sample++) {
+                table.tune();
+                readAll(table);
+            }
+            assertEquals(AdaptiveBookTable.FROZEN, table.getCollisionResolutionScheme());
+            for (int i = 0; i < AdaptiveBookTable.OVERLAY_LIMIT; i++) {
+                assertTrue(table.remove(books.get(i).getKey()));
+            }
+            assertEquals(AdaptiveBookTable.FROZEN, table.getCollisionResolutionScheme());
+            assertEquals(books.size() - AdaptiveBookTable.OVERLAY_LIMIT, table.numKeys());
+            // a key already in the overlay still fits, a new one does not
+            table.insert(books.get(0).getKey(), books.get(0));
+            assertEquals(AdaptiveBookTable.FROZEN, table.getCollisionResolutionScheme());
+            Book last = books.get(AdaptiveBookTable.OVERLAY_LIMIT);
+            assertTrue(table.remove(last.getKey()));
+            assertEquals(AdaptiveBookTable.CHAINED, table.getCollisionResolutionScheme());
+            assertEquals(books.size() - AdaptiveBookTable.OVERLAY_LIMIT, table.numKeys());
+            table.insert(last.getKey(), last);
+            for (int i = 1; i < AdaptiveBookTable.OVERLAY_LIMIT; i++) {
+                assertEquals(null, table.lookup(books.get(i).getKey()));
+                table.insert(books.get(i).getKey(), books.get(i));
+            }
+            assertEquals(2, table.getProfile().getMigrations());
+
+            // the writes, then two read only samples are no longer enough
+            for (int sample = 0; sample < 3; sample++) {
+                table.tune();
+                readAll(table);
+            }
+            assertEquals(AdaptiveBookTable.CHAINED, table.getCollisionResolutionScheme());
+            for (int sample = 0; sample < 2; sample++) {
+                table.tune();
+                readAll(table);
+            }
+            assertEquals(AdaptiveBookTable.FROZEN, table.getCollisionResolutionScheme());
+            assertEquals(3, table.getProfile().getMigrations());
+        }
+    }
+}
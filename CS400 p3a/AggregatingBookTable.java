@@ -0,0 +1,118 @@
+import java.util.ArrayList;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Wraps a book table and keeps group-by aggregates (see BookAggregate) up to
+ * date on every insert and remove, so dashboards can read per-author or
+ * per-language statistics without rescanning the catalogue.
+ * 
+ * All changes must go through this wrapper. Aggregates registered while the
+ * table already holds books are filled by scanning it once, which needs a
+ * ScannableBookTable.
+ */
+public class AggregatingBookTable implements DataStructureADT<String, Book> {
+
+    // common group keys and measures
+    public static final Function<Book, String> BY_AUTHORS = Book::getAuthors;
+    public static final Function<Book, String> BY_LANGUAGE = Book::getLanguageCode;
+    public static final Function<Book, String> ALL_BOOKS = book -> "all";
+    public static final ToDoubleFunction<Book> AVERAGE_RATING =
+            book -> Double.parseDouble(book.getAverageRating());
+    public static final ToDoubleFunction<Book> PAGES =
+            book -> Double.parseDouble(book.getPages());
+
+    private final DataStructureADT<String, Book> table;
+    private final ArrayList<BookAggregate> aggregates = new ArrayList<>();
+
+    /**
+     * @param table the table to wrap; it must not be changed other than
+     *        through this wrapper from now on
+     */
+    public AggregatingBookTable(DataStructureADT<String, Book> table) {
+        this.table = table;
+    }
+
+    /**
+     * Register an aggregate of count, sum and mean per group
+     * @param name a label for the aggregate
+     * @param groupBy picks the group of a book
+     * @param measure reads the numeric value of a book, may be null to only count
+     * @return the aggregate, readable at any time
+     */
+    public BookAggregate register(String name, Function<Book, String> groupBy,
+            ToDoubleFunction<Book> measure) {
+        return register(name, groupBy, measure, null);
+    }
+
+    /**
+     * Register an aggregate that also keeps a histogram of the values per group
+     * @param edges the ascending bucket edges of the histogram
+     */
+    public BookAggregate register(String name, Function<Book, String> groupBy,
+            ToDoubleFunction<Book> measure, double[] edges) {
+        BookAggregate aggregate = new BookAggregate(name, groupBy, measure, edges);
+        if (table.numKeys() > 0) {
+            if (!(table instanceof ScannableBookTable)) {
+                throw new IllegalStateException(
+                        "register aggregates before inserting, or wrap a ScannableBookTable");
+            }
+            ScannableBookTable scannable = (ScannableBookTable) table;
+            scannable.scanBuckets(0, scannable.bucketCount(), aggregate::add);
+        }
+        aggregates.add(aggregate);
+        return aggregate;
+    }
+
+    /**
+     * Insert into the wrapped table, then count the book in every aggregate
+     */
+    @Override
+    public void insert(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
+        table.insert(key, value);
+        for (BookAggregate aggregate : aggregates) {
+            aggregate.add(value);
+        }
+    }
+
+    /**
+     * Remove from the wrapped table, then take the book out of every aggregate
+     */
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        Book book = aggregates.isEmpty() ? null : find(key);
+        if (!table.remove(key)) {
+            return false;
+        }
+        if (book != null) {
+            for (BookAggregate aggregate : aggregates) {
+                aggregate.remove(book);
+            }
+        }
+        return true;
+    }
+
+    private Book find(String key) throws IllegalNullKeyException {
+        try {
+            if (table instanceof ScannableBookTable) {
+                return ((ScannableBookTable) table).lookup(key);
+            }
+            return table.get(key);
+        } catch (KeyNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        return table.get(key);
+    }
+
+    @Override
+    public int numKeys() {
+        return table.numKeys();
+    }
+}
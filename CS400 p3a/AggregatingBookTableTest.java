@@ -0,0 +1,77 @@
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Test that aggregates follow inserts and removes
+ */
+public class AggregatingBookTableTest {
+
+    static ArrayList<Book> bookTable;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    // what a full rescan of books [from, to) gives for one language
+    private static double[] rescan(String language, int from, int to) {
+        double count = 0;
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            if (bookTable.get(i).getLanguageCode().equals(language)) {
+                count++;
+                sum += Double.parseDouble(bookTable.get(i).getAverageRating());
+            }
+        }
+        return new double[] {count, sum};
+    }
+
+    /**
+     * Counts and means per language match a rescan after inserts and removes
+     */
+    @Test
+    public void test000_matches_rescan() throws Exception {
+        AggregatingBookTable table = new AggregatingBookTable(new BookHashTable());
+        BookAggregate ratings = table.register("rating by language",
+                AggregatingBookTable.BY_LANGUAGE, AggregatingBookTable.AVERAGE_RATING);
+        for (int i = 0; i < 2000; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        for (int i = 0; i < 500; i++) {
+            table.remove(bookTable.get(i).getKey());
+        }
+        double[] expected = rescan("eng", 500, 2000);
+        BookAggregate.GroupStats eng = ratings.get("eng");
+        assertEquals((long) expected[0], eng.getCount());
+        assertEquals(expected[1] / expected[0], eng.getMean(), 1e-9);
+        long total = 0;
+        for (BookAggregate.GroupStats stats : ratings.snapshot()) {
+            total += stats.getCount();
+        }
+        assertEquals(1500, total);
+        assertNull(ratings.get("no such language"));
+    }
+
+    /**
+     * An aggregate registered late is filled from the table, histograms are kept
+     */
+    @Test
+    public void test001_late_registration_and_histogram() throws Exception {
+        AggregatingBookTable table = new AggregatingBookTable(new BookHashTable());
+        for (int i = 0; i < 1000; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        BookAggregate pages = table.register("pages", AggregatingBookTable.ALL_BOOKS,
+                AggregatingBookTable.PAGES, new double[] {100, 300, 600});
+        long[] histogram = pages.get("all").getHistogram();
+        assertEquals(4, histogram.length);
+        assertEquals(1000, histogram[0] + histogram[1] + histogram[2] + histogram[3]);
+        table.remove(bookTable.get(0).getKey());
+        assertEquals(999, pages.get("all").getCount());
+    }
+}
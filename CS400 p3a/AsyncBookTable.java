@@ -0,0 +1,182 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An asynchronous read-through cache over a book table.
+ * 
+ * get returns a CompletableFuture. A key that is in the table completes at once;
+ * a key that is not is loaded by the BookLoader on the executor, stored in the
+ * table and handed to the caller. Loads are single-flight: while a key is being
+ * loaded, every other request for it waits on that same load instead of starting
+ * its own, so a burst of misses on one ISBN (say, right after the cache was
+ * flushed) costs one load, not one per request.
+ * 
+ * The wrapped table does not need to be thread safe; every access to it is made
+ * while holding its monitor.
+ */
+public class AsyncBookTable {
+    private final HashTableADT<String, Book> table;
+    private final BookLoader loader;
+    private final Executor executor;
+    // the load running for each key, removed once it finished
+    private final ConcurrentHashMap<String, CompletableFuture<Book>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Run loads on the common fork join pool
+     */
+    public AsyncBookTable(HashTableADT<String, Book> table, BookLoader loader) {
+        this(table, loader, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param table the cache, read and filled by this object
+     * @param loader loads books missing from the cache
+     * @param executor runs the loads; a loader that blocks on I/O wants an
+     * executor with enough threads for the loads expected at once
+     */
+    public AsyncBookTable(HashTableADT<String, Book> table, BookLoader loader,
+            Executor executor) {
+        if (table == null || loader == null || executor == null) {
+            throw new IllegalArgumentException("table, loader and executor are required");
+        }
+        this.table = table;
+        this.loader = loader;
+        this.executor = executor;
+    }
+
+    /**
+     * Look up a book, loading it if the table does not have it
+     * @return completes with the book, with null if the loader has no such book,
+     * or exceptionally with IllegalNullKeyException or the loader's exception
+     */
+    public CompletableFuture<Book> get(String key) {
+        if (key == null) {
+            return CompletableFuture.failedFuture(new IllegalNullKeyException());
+        }
+        Book cached = cached(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<Book> created = new CompletableFuture<>();
+        CompletableFuture<Book> load = inFlight.putIfAbsent(key, created);
+        if (load == null) {
+            load = created;
+            loads.increment();
+            try {
+                executor.execute(() -> load(key, created));
+            } catch (RuntimeException e) {
+                // the executor refused the task
+                inFlight.remove(key, created);
+                created.completeExceptionally(e);
+            }
+        } else {
+            coalesced.increment();
+        }
+        // callers get their own view, so one of them completing or cancelling
+        // it does not affect the others
+        return load.copy();
+    }
+
+    /**
+     * Put a book in the table, replacing a cached copy
+     */
+    public void put(Book book) throws IllegalNullKeyException {
+        if (book == null || book.getKey() == null) {
+            throw new IllegalNullKeyException();
+        }
+        synchronized (table) {
+            table.remove(book.getKey());
+            try {
+                table.insert(book.getKey(), book);
+            } catch (DuplicateKeyException e) {
+                throw new IllegalStateException("key still present after remove", e);
+            }
+        }
+    }
+
+    /**
+     * Drop a book from the table; the next get loads it again
+     * @return true if the book was cached
+     */
+    public boolean invalidate(String key) throws IllegalNullKeyException {
+        synchronized (table) {
+            return table.remove(key);
+        }
+    }
+
+    /**
+     * the number of gets answered from the table
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * the number of loads started
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * the number of gets that waited on a load started by another get
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * the number of keys being loaded right now
+     */
+    public int getLoadsInFlight() {
+        return inFlight.size();
+    }
+
+    private Book cached(String key) {
+        synchronized (table) {
+            return BookTableSets.probe(table, key);
+        }
+    }
+
+    // runs on the executor
+    private void load(String key, CompletableFuture<Book> result) {
+        try {
+            // a load that finished between our miss and registering this one
+            // already put the book in the table
+            Book book = cached(key);
+            if (book == null) {
+                book = loader.load(key);
+                if (book != null) {
+                    book = store(key, book);
+                }
+            }
+            // the table has the book before the load is unregistered, so no
+            // request can miss both and start a second load
+            inFlight.remove(key, result);
+            result.complete(book);
+        } catch (Throwable e) {
+            inFlight.remove(key, result);
+            result.completeExceptionally(e);
+        }
+    }
+
+    // keeps a copy that was put while the load ran
+    private Book store(String key, Book book) throws IllegalNullKeyException {
+        synchronized (table) {
+            try {
+                table.insert(key, book);
+                return book;
+            } catch (DuplicateKeyException e) {
+                return BookTableSets.probe(table, key);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the single-flight loading of AsyncBookTable
+ */
+public class AsyncBookTableTest {
+
+    static ArrayList<Book> books;
+
+    ExecutorService executor;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Check that a cached book is returned without calling the loader, and a
+     * loaded book is cached
+     */
+    @Test
+    public void test001_hit_and_read_through() throws Exception {
+        BookHashTable table = new BookHashTable();
+        table.insert(books.get(0).getKey(), books.get(0));
+        AtomicInteger calls = new AtomicInteger();
+        AsyncBookTable async = new AsyncBookTable(table, key -> {
+            calls.incrementAndGet();
+            return key.equals(books.get(1).getKey()) ? books.get(1) : null;
+        }, executor);
+
+        assertSame(books.get(0), async.get(books.get(0).getKey()).get());
+        assertEquals(0, calls.get());
+        assertSame(books.get(1), async.get(books.get(1).getKey()).get());
+        assertSame(books.get(1), table.get(books.get(1).getKey()));
+        assertSame(books.get(1), async.get(books.get(1).getKey()).get());
+        assertEquals(1, calls.get());
+        // unknown books are not cached
+        assertNull(async.get("nothing").get());
+        assertNull(async.get("nothing").get());
+        assertEquals(3, calls.get());
+        assertEquals(2, async.getHits());
+    }
+
+    /**
+     * Check that concurrent misses on one key share a single load
+     */
+    @Test
+    public void test002_concurrent_misses_load_once() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Book book = books.get(2);
+        AsyncBookTable async = new AsyncBookTable(new BookHashTable(), key -> {
+            calls.incrementAndGet();
+            release.await();
+            return book;
+        }, executor);
+
+        List<CompletableFuture<Book>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(async.get(book.getKey()));
+        }
+        assertEquals(1, async.getLoadsInFlight());
+        release.countDown();
+        for (CompletableFuture<Book> result : results) {
+            assertSame(book, result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(1, async.getLoads());
+        assertEquals(99, async.getCoalesced());
+        assertEquals(0, async.getLoadsInFlight());
+    }
+
+    /**
+     * Check that a failed load reaches every waiter and is not cached
+     */
+    @Test
+    public void test003_failures_are_not_cached() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AsyncBookTable async = new AsyncBookTable(new BookHashTable(), key -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new java.io.IOException("backend down");
+            }
+            return books.get(3);
+        }, executor);
+
+        try {
+            async.get(books.get(3).getKey()).get();
+            fail("the first load should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof java.io.IOException);
+        }
+        assertSame(books.get(3), async.get(books.get(3).getKey()).get());
+        assertEquals(2, calls.get());
+
+        try {
+            async.get(null).get();
+            fail("a null key should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalNullKeyException);
+        }
+    }
+
+    /**
+     * Check that a caller cancelling its future does not affect the other waiters
+     */
+    @Test
+    public void test004_cancel_is_private_to_the_caller() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncBookTable async = new AsyncBookTable(new BookHashTable(), key -> {
+            release.await();
+            return books.get(4);
+        }, executor);
+        CompletableFuture<Book> first = async.get(books.get(4).getKey());
+        CompletableFuture<Book> second = async.get(books.get(4).getKey());
+        first.cancel(true);
+        release.countDown();
+        assertSame(books.get(4), second.get(10, TimeUnit.SECONDS));
+    }
+}
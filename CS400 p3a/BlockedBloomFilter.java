@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A blocked Bloom filter over string keys.
+ * 
+ * The bit array is split into 512-bit blocks (one cache line). A key's hash
+ * picks one block and all of its k bits are set inside that block, so a lookup
+ * touches a single cache line. The price is a slightly higher false positive
+ * rate than a classic Bloom filter of the same size, which is compensated for
+ * by giving it about 10% more bits per key.
+ * 
+ * Bits can not be cleared, so removed keys keep answering "maybe" until the
+ * filter is rebuilt. The filter never answers "no" for a key that was added.
+ * Rebuilding happens in place, so the counters and any reference to the filter
+ * stay valid across a rebuild.
+ */
+public class BlockedBloomFilter {
+    // longs per 512-bit block
+    private static final int BLOCK_LONGS = 8;
+    // seed that keeps the filter's hash independent from the table's index
+    private static final long SEED = 0x5BD1E9955BD1E995L;
+
+    private long[] bits;
+    private int numBlocks;
+    // number of bits set per key
+    private int k;
+    private double falsePositiveRate;
+
+    // how many lookups were made, how many were answered "no", and how many
+    // answered "maybe" for a key that turned out to be absent
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the wanted false positive rate at that many keys,
+     *        strictly between 0 and 1
+     */
+    public BlockedBloomFilter(int expectedKeys, double falsePositiveRate) {
+        clear(expectedKeys, falsePositiveRate);
+    }
+
+    /**
+     * Drop every key and resize the bit array for a new number of keys and
+     * false positive rate. The lookup counters are kept.
+     * @param expectedKeys the number of keys the filter is sized for
+     * @param falsePositiveRate the wanted false positive rate at that many keys,
+     *        strictly between 0 and 1
+     */
+    public void clear(int expectedKeys, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("false positive rate must be between 0 and 1");
+        }
+        double ln2 = Math.log(2);
+        double bitsPerKey = -Math.log(falsePositiveRate) / (ln2 * ln2) * 1.1;
+        long totalBits = (long) Math.ceil(Math.max(1, expectedKeys) * bitsPerKey);
+        this.numBlocks = (int) Math.max(1, (totalBits + 511) / 512);
+        this.k = (int) Math.max(1, Math.min(16, Math.round(bitsPerKey * ln2)));
+        this.bits = new long[numBlocks * BLOCK_LONGS];
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * Add a key to the filter
+     */
+    public void add(CharSequence key) {
+        long h = KeyHash.hash(key, SEED);
+        int block = KeyHash.reduce(h >>> 32, numBlocks) * BLOCK_LONGS;
+        int h1 = (int) h;
+        int h2 = (int) KeyHash.mix(h);
+        for (int i = 0; i < k; i++) {
+            int bit = (h1 + i * h2) & 511;
+            bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Check a key in front of a table lookup, counting the lookup and whether
+     * the filter saved it
+     * @return false if the key was certainly never added, true if it may have been
+     */
+    public boolean checkLookup(CharSequence key) {
+        lookups.increment();
+        if (mightContain(key)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * checkLookup for a key given as a Latin-1 byte range
+     */
+    public boolean checkLookup(byte[] key, int offset, int length) {
+        lookups.increment();
+        if (mightContain(KeyHash.hash(key, offset, length, SEED))) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Check a key against the filter without touching the counters
+     * @return false if the key was certainly never added, true if it may have been
+     */
+    public boolean mightContain(CharSequence key) {
+        return mightContain(KeyHash.hash(key, SEED));
+    }
+
+    private boolean mightContain(long h) {
+        int block = KeyHash.reduce(h >>> 32, numBlocks) * BLOCK_LONGS;
+        int h1 = (int) h;
+        int h2 = (int) KeyHash.mix(h);
+        for (int i = 0; i < k; i++) {
+            int bit = (h1 + i * h2) & 511;
+            if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell the filter that a key it let through was not in the table after all
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * return the false positive rate the filter was sized for
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * return the size of the bit array in bytes
+     */
+    public long sizeInBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * return the number of lookups answered without searching the table
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * return the false positive rate seen so far: the share of absent keys that
+     * the filter let through
+     */
+    public double getObservedFalsePositiveRate() {
+        long absent = rejected.sum() + falsePositives.sum();
+        return absent == 0 ? 0 : (double) falsePositives.sum() / absent;
+    }
+}
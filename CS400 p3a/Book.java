@@ -32,16 +32,44 @@ public class Book {
         this.isbn13 = isbn13;
     }
     
+    public String getAuthors() {
+        return this.authors;
+    }
+    
+    public String getOriginalPublicationYear() {
+        return this.original_publication_year;
+    }
+    
+    public String getTitle() {
+        return this.title;
+    }
+    
+    public String getLanguageCode() {
+        return this.language_code;
+    }
+    
+    public String getAverageRating() {
+        return this.average_rating;
+    }
+    
+    public String getCoverType() {
+        return this.cover_type;
+    }
+    
+    public String getPages() {
+        return this.pages;
+    }
+    
     
     @Override
     public String toString() {
-        return "ISBN13: "+this.isbn13+"; Book: "+ 
-               this.title+", Author: "+this.authors+
+        return "ISBN13: "+getKey()+"; Book: "+ 
+               getTitle()+", Author: "+getAuthors()+
                ", Original Publication Year: "+
-               this.original_publication_year+
-               ", Language: "+this.language_code+", Average Rating: "+
-               this.average_rating+", Cover Type: "+this.cover_type+ 
-               ", Pages: "+ this.pages;                
+               getOriginalPublicationYear()+
+               ", Language: "+getLanguageCode()+", Average Rating: "+
+               getAverageRating()+", Cover Type: "+getCoverType()+ 
+               ", Pages: "+ getPages();                
     }
 }
 
@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * One group-by aggregate over the books of an AggregatingBookTable, e.g. the
+ * average rating per author or the page count distribution per language.
+ * 
+ * Every group keeps a count, the count and sum of its numeric values and,
+ * optionally, a histogram over fixed bucket edges. All of these can be undone, so
+ * both adding and removing a book cost O(1). The numeric value is parsed from the
+ * book's String field when the book is added or removed; reads never parse.
+ * Books whose value can not be parsed still count towards their group but not
+ * towards its sum or histogram.
+ */
+public class BookAggregate {
+
+    /**
+     * An immutable copy of one group's statistics
+     */
+    public static class GroupStats {
+        private final String group;
+        private final long count;
+        private final long valueCount;
+        private final double sum;
+        private final long[] histogram;
+
+        GroupStats(String group, long count, long valueCount, double sum, long[] histogram) {
+            this.group = group;
+            this.count = count;
+            this.valueCount = valueCount;
+            this.sum = sum;
+            this.histogram = histogram;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        /**
+         * return the number of books in the group
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * return the number of books in the group with a parseable value
+         */
+        public long getValueCount() {
+            return valueCount;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * return the mean of the parseable values, NaN if there are none
+         */
+        public double getMean() {
+            return valueCount == 0 ? Double.NaN : sum / valueCount;
+        }
+
+        /**
+         * return a copy of the histogram; element i counts the values in
+         * [edges[i - 1], edges[i]), the first and last elements count the values
+         * below the first edge and from the last edge on. Empty if the aggregate
+         * has no histogram.
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return group + ": count=" + count + ", mean=" + getMean();
+        }
+    }
+
+    // the running totals of one group
+    private static class Accumulator {
+        long count;
+        long valueCount;
+        double sum;
+        long[] histogram;
+    }
+
+    private final String name;
+    private final Function<Book, String> groupBy;
+    private final ToDoubleFunction<Book> measure;
+    private final double[] edges;
+    private final HashMap<String, Accumulator> groups = new HashMap<>();
+
+    BookAggregate(String name, Function<Book, String> groupBy, ToDoubleFunction<Book> measure,
+            double[] edges) {
+        this.name = name;
+        this.groupBy = groupBy;
+        this.measure = measure;
+        this.edges = edges == null ? new double[0] : edges.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Count a book that was added to the table
+     */
+    synchronized void add(Book book) {
+        update(book, 1);
+    }
+
+    /**
+     * Undo add for a book that was removed from the table
+     */
+    synchronized void remove(Book book) {
+        update(book, -1);
+    }
+
+    private void update(Book book, int sign) {
+        String group = groupBy.apply(book);
+        Accumulator accumulator = groups.get(group);
+        if (accumulator == null) {
+            accumulator = new Accumulator();
+            accumulator.histogram = new long[edges.length == 0 ? 0 : edges.length + 1];
+            groups.put(group, accumulator);
+        }
+        accumulator.count += sign;
+        double value = value(book);
+        if (!Double.isNaN(value)) {
+            accumulator.valueCount += sign;
+            accumulator.sum += sign * value;
+            if (edges.length > 0) {
+                accumulator.histogram[histogramBucket(value)] += sign;
+            }
+        }
+        if (accumulator.count == 0) {
+            groups.remove(group);
+        }
+    }
+
+    // the parsed value, NaN when the field is missing or not a number
+    private double value(Book book) {
+        try {
+            return measure == null ? Double.NaN : measure.applyAsDouble(book);
+        } catch (NumberFormatException | NullPointerException e) {
+            return Double.NaN;
+        }
+    }
+
+    private int histogramBucket(double value) {
+        int bucket = 0;
+        while (bucket < edges.length && value >= edges[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    /**
+     * return the statistics of one group, null if no book is in it
+     */
+    public synchronized GroupStats get(String group) {
+        Accumulator accumulator = groups.get(group);
+        return accumulator == null ? null : stats(group, accumulator);
+    }
+
+    /**
+     * return a consistent copy of every group's statistics, in no particular order
+     */
+    public synchronized List<GroupStats> snapshot() {
+        ArrayList<GroupStats> all = new ArrayList<>(groups.size());
+        for (String group : groups.keySet()) {
+            all.add(stats(group, groups.get(group)));
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * return the number of non empty groups
+     */
+    public synchronized int numGroups() {
+        return groups.size();
+    }
+
+    private static GroupStats stats(String group, Accumulator accumulator) {
+        return new GroupStats(group, accumulator.count, accumulator.valueCount, accumulator.sum,
+                accumulator.histogram.clone());
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.function.Consumer;
 
 
 
@@ -22,7 +23,7 @@ import java.util.LinkedList;
  * @param <K> unique comparable identifier for each <K,V> pair, may not be null
  * @param <V> associated value with a key, value may be null
  */
-public class BookHashTable implements HashTableADT<String, Book> {
+public class BookHashTable implements ScannableBookTable {
     // declare a linkedList for the HashTable
     private LinkedList<Book>[] hashLinkedList;
     // initial value of the capacity if none is specified
@@ -35,6 +36,10 @@ public class BookHashTable implements HashTableADT<String, Book> {
     private int numKeys;
     // the capacity of the hashTable 
     private int capacity;
+    // opt-in instrumentation, null while metrics are disabled
+    private TableMetrics metrics;
+    // optional membership filter consulted before the buckets, null when disabled
+    private BlockedBloomFilter bloomFilter;
 
     /**
      * REQUIRED default no-arg constructor
@@ -66,6 +71,21 @@ public class BookHashTable implements HashTableADT<String, Book> {
      */
     @Override
     public void insert(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
+        // without metrics the only extra cost is this null check
+        if (metrics == null) {
+            insertBook(key, value);
+            return;
+        }
+        long start = System.nanoTime();
+        insertBook(key, value);
+        metrics.recordInsert(System.nanoTime() - start);
+    }
+
+    /**
+     * The body of insert, also used by reHashing so that re-inserted keys
+     * are not counted by the metrics.
+     */
+    private void insertBook(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
         // declare linkedList for bucket to store potential collisions 
         LinkedList<Book> bucketList;
         
@@ -92,6 +112,25 @@ public class BookHashTable implements HashTableADT<String, Book> {
         // now the hasCode is positive, so we can readily % it to give an positive index 
         int hashIndex = (key.hashCode() & 0x7FFFFFFF) % capacity;
         
+        // determine if the key is already stored in the hashTableList, a new key
+        // is usually rejected by the filter without walking the bucket
+        if ((bloomFilter == null || bloomFilter.mightContain(key))
+                && findBook(hashLinkedList[hashIndex], key) != null) {
+            throw new DuplicateKeyException();
+        }
+        
+        // Caution!!: we need to check before each insertion if the loadFactor reached
+        // the LFT, if it did, then resize and rehash the hashTable first. The load factor
+        // must be computed in floating point, numKeys / capacity alone is always 0.
+        double loadFactor = (double) numKeys / capacity;
+        if (numKeys > 0 && loadFactor >= loadFactorThreshold) {
+            // temporarily store all the key-value pairs in the hashTable, and then
+            // store them in an arrayList (easiest) 
+            reHashing(allBooks());
+            // the capacity changed, so the key belongs to a different bucket now
+            hashIndex = (key.hashCode() & 0x7FFFFFFF) % capacity;
+        }
+        
         // If LinkedList at the hashIndex is null, we create a new empty bucket linked list
         if (hashLinkedList[hashIndex] == null) {
             bucketList = new LinkedList<>();
@@ -102,54 +141,51 @@ public class BookHashTable implements HashTableADT<String, Book> {
         else {
             bucketList = hashLinkedList[hashIndex];
         }
-        // if there are no keys in the hashTable
-        if (numKeys == 0) {
-            // add the book to the bucketList
-            bucketList.add(bookToStore);
-            // And then assign that bucket linkedList to the hashTable Linked List 
-            hashLinkedList[hashIndex] = bucketList;
-            // increment the number of keys
-            numKeys++;
-        } 
-        // if there are keys in the hashTable
-        else {
-            // determine if the key is already stored in the hashTableList
-            try {
-                // if the get() is not throwing an KeyNotFoundException, then the key is already 
-              // in the hashTable
-                get(key);
-                throw new DuplicateKeyException();
-                //if KeyNotFoundException is thrown, key to be added is the unique one, which means
-                // that we can added the key to the list
-            } catch (KeyNotFoundException e) {
-                bucketList.add(bookToStore);
-                hashLinkedList[hashIndex] = bucketList;
-                numKeys++;
-                double loadFactor = (double) (numKeys / capacity);
-                // Caution!!: we need to check after each insertion if the loadFactor surpassed
-                // the LFT, if it did, then resize and rehash the hashTable.
-                if (loadFactor >= loadFactorThreshold) {
-                    // temporarily store all the key-value pairs in the hashTable, and then
-                    // store them in an arrayList (easiest) 
-                  ArrayList<Book> tempStorage = new ArrayList<Book>();
-                  
-                  for (int i = 0; i < hashLinkedList.length; i++) {
-                    // first of all, we need to store all the key pairs into the bucket
-                    LinkedList<Book> tempBucketStorage = hashLinkedList[i];
-                   
-                    for (int j = 0; j < tempBucketStorage.size(); j++) {
-                      tempStorage.add(tempBucketStorage.get(j));
-                    }
-                  }
-                  ArrayList<Book> tempStorageForResize = tempStorage;
-                   
-                    reHashing(tempStorageForResize);
-                }
+        // add the book to the bucketList
+        bucketList.add(bookToStore);
+        if (bloomFilter != null) {
+            bloomFilter.add(key);
+        }
+        // And then assign that bucket linkedList to the hashTable Linked List 
+        hashLinkedList[hashIndex] = bucketList;
+        // increment the number of keys
+        numKeys++;
+    }
+
+    /**
+     * Search one bucket for the book with the given key
+     * @param bucket the bucket to search, may be null
+     * @param key the key to be searched
+     * @return the book with that key, null if the bucket does not hold it
+     */
+    private Book findBook(LinkedList<Book> bucket, String key) {
+        if (bucket == null) {
+            return null;
+        }
+        for (Book book : bucket) {
+            if (key.equals(book.getKey())) {
+                return book;
             }
         }
+        return null;
     }
 
-   
+    /**
+     * Collect every book stored in the table, skipping the buckets that were
+     * never used
+     * @return an arrayList holding all the books
+     */
+    private ArrayList<Book> allBooks() {
+        ArrayList<Book> tempStorage = new ArrayList<Book>(numKeys);
+        for (int i = 0; i < hashLinkedList.length; i++) {
+            // first of all, we need to store all the key pairs into the bucket
+            LinkedList<Book> tempBucketStorage = hashLinkedList[i];
+            if (tempBucketStorage != null) {
+                tempStorage.addAll(tempBucketStorage);
+            }
+        }
+        return tempStorage;
+    }
 
     /**
      * This function serves to resize the hash Table if the load factor is larger than the LFT
@@ -159,15 +195,24 @@ public class BookHashTable implements HashTableADT<String, Book> {
      */
    
     private void reHashing(ArrayList<Book> temp) throws IllegalNullKeyException, DuplicateKeyException {
+        long start = metrics == null ? 0 : System.nanoTime();
+        int oldCapacity = capacity;
         // we need to double the table size 
         this.capacity = capacity * 2 + 1;
         // update the size of the list to the hashTable
         this.hashLinkedList = new LinkedList[capacity];
         // initialize the numbers of keys to zero
         this.numKeys = 0;
+        // resizing the filter for the new capacity also drops removed keys
+        if (bloomFilter != null) {
+            bloomFilter.clear(bloomFilterKeys(), bloomFilter.getFalsePositiveRate());
+        }
         // insert the key-value pairs to the resized table 
         for (int i = 0; i < temp.size(); i++) {
-            insert(temp.get(i).getKey(), temp.get(i));
+            insertBook(temp.get(i).getKey(), temp.get(i));
+        }
+        if (metrics != null) {
+            metrics.recordResize(oldCapacity, capacity, System.nanoTime() - start);
         }
     }
 
@@ -180,6 +225,19 @@ public class BookHashTable implements HashTableADT<String, Book> {
      */
     @Override
     public boolean remove(String key) throws IllegalNullKeyException {
+        if (metrics == null) {
+            return removeBook(key);
+        }
+        long start = System.nanoTime();
+        boolean removed = removeBook(key);
+        metrics.recordRemove(System.nanoTime() - start, removed);
+        return removed;
+    }
+
+    /**
+     * The body of remove
+     */
+    private boolean removeBook(String key) throws IllegalNullKeyException {
         // we declare a bucketList 
         LinkedList<Book> bucketRemoveList;
         // we declare a book variable that stores the book to be removed if any 
@@ -234,17 +292,40 @@ public class BookHashTable implements HashTableADT<String, Book> {
      */
     @Override
     public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (metrics == null) {
+            return getBook(key);
+        }
+        long start = System.nanoTime();
+        boolean found = false;
+        try {
+            Book book = getBook(key);
+            found = true;
+            return book;
+        } finally {
+            metrics.recordGet(System.nanoTime() - start, found);
+        }
+    }
+
+    /**
+     * The body of get
+     */
+    private Book getBook(String key) throws IllegalNullKeyException, KeyNotFoundException {
         LinkedList<Book> bucketGetList;// Create LinkedList Reference
         Book bookToGet;
         if (key == null) {
             throw new IllegalNullKeyException();
         }
+        // most absent keys are rejected by the filter without touching a bucket
+        if (bloomFilter != null && !bloomFilter.checkLookup(key)) {
+            throw new KeyNotFoundException();
+        }
         // we need to calculate the hashIndex of the particular key using the algorithm 
         // described above 
         int hashIndex = (key.hashCode() & 0x7FFFFFFF) % capacity;
         // if the position at the hashIndex is null, the key is not found, we need to 
         // throw an exception
         if (hashLinkedList[hashIndex] == null) {
+            missedAfterFilter();
             throw new KeyNotFoundException();
         } 
         // if the position at the hashIndex is not null, we need to store the value to the bucketList
@@ -253,6 +334,7 @@ public class BookHashTable implements HashTableADT<String, Book> {
         else {
             bucketGetList = hashLinkedList[hashIndex];
             if (bucketGetList.size() == 0) {
+                missedAfterFilter();
                 throw new KeyNotFoundException();
             }
         }
@@ -264,9 +346,279 @@ public class BookHashTable implements HashTableADT<String, Book> {
                 return bookToGet;
             }
         }
+        missedAfterFilter();
         throw new KeyNotFoundException();
     }
 
+    // a miss that got past the filter is one of its false positives
+    private void missedAfterFilter() {
+        if (bloomFilter != null) {
+            bloomFilter.recordFalsePositive();
+        }
+    }
+
+    /**
+     * Release the bucket lists that remove() left empty, so a table that went
+     * through heavy churn gives their memory back. The capacity itself is not
+     * changed since HashTableADT requires that it never decreases; use
+     * ShrinkingBookHashTable when the array should shrink as well.
+     * @return the number of empty buckets that were released
+     */
+    public int compact() {
+        int released = 0;
+        for (int i = 0; i < hashLinkedList.length; i++) {
+            if (hashLinkedList[i] != null && hashLinkedList[i].isEmpty()) {
+                hashLinkedList[i] = null;
+                released++;
+            }
+        }
+        // removed keys still have their bits set, rebuilding the filter clears them
+        if (bloomFilter != null) {
+            rebuildBloomFilter(bloomFilter.getFalsePositiveRate());
+        }
+        return released;
+    }
+
+    /**
+     * Build an immutable, perfectly hashed copy of the current contents. Later
+     * changes to this table are not seen by the copy.
+     * @return a read-only table holding every book of this table
+     */
+    public FrozenBookHashTable freeze() {
+        try {
+            return new FrozenBookHashTable(allBooks());
+        } catch (IllegalNullKeyException | DuplicateKeyException e) {
+            // cannot happen, the keys of this table are already unique and not null
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Keep a blocked Bloom filter of the stored keys so that get() can reject
+     * most absent keys without searching a bucket. The filter is sized for the
+     * number of keys the table holds at its next resize and rebuilt in place
+     * on every resize, so the returned filter stays in use until
+     * disableBloomFilter(). Calling it again rebuilds the same filter with the
+     * new rate.
+     * @param falsePositiveRate the share of absent keys that may still get
+     *        through to a bucket search, e.g. 0.01
+     * @return the filter, whose counters show how many lookups it saved
+     */
+    public BlockedBloomFilter enableBloomFilter(double falsePositiveRate) {
+        if (bloomFilter == null) {
+            bloomFilter = new BlockedBloomFilter(bloomFilterKeys(), falsePositiveRate);
+            for (Book book : allBooks()) {
+                bloomFilter.add(book.getKey());
+            }
+        } else {
+            rebuildBloomFilter(falsePositiveRate);
+        }
+        return bloomFilter;
+    }
+
+    // empty the filter and add every stored key again
+    private void rebuildBloomFilter(double falsePositiveRate) {
+        bloomFilter.clear(bloomFilterKeys(), falsePositiveRate);
+        for (Book book : allBooks()) {
+            bloomFilter.add(book.getKey());
+        }
+    }
+
+    /**
+     * Stop using the membership filter
+     */
+    public void disableBloomFilter() {
+        bloomFilter = null;
+    }
+
+    /**
+     * return the membership filter, null if it is not enabled
+     */
+    public BlockedBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    // size the filter for the number of keys at which this capacity is outgrown
+    private int bloomFilterKeys() {
+        int expectedKeys = (int) Math.ceil(capacity * loadFactorThreshold) + 1;
+        return Math.max(expectedKeys, numKeys);
+    }
+
+    /**
+     * Look up a key given as any CharSequence, e.g. a slice of a request buffer,
+     * without building a String. The hash and the key comparison run directly on
+     * the chars, and a miss returns null instead of throwing, so the lookup
+     * allocates nothing.
+     * @param key the key to be searched
+     * @return the book stored under that key, null if there is none
+     * @throws IllegalNullKeyException if key is null
+     */
+    @Override
+    public Book lookup(CharSequence key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        Book book = null;
+        if (bloomFilter == null || bloomFilter.checkLookup(key)) {
+            int hashIndex = (KeyHash.stringHashCode(key) & 0x7FFFFFFF) % capacity;
+            LinkedList<Book> bucket = hashLinkedList[hashIndex];
+            if (bucket != null) {
+                for (Book candidate : bucket) {
+                    if (candidate.getKey().contentEquals(key)) {
+                        book = candidate;
+                        break;
+                    }
+                }
+            }
+            if (book == null) {
+                missedAfterFilter();
+            }
+        }
+        if (metrics != null) {
+            metrics.recordGet(System.nanoTime() - start, book != null);
+        }
+        return book;
+    }
+
+    /**
+     * Look up a key given as a range of bytes, e.g. straight from a network
+     * buffer, without decoding it. Each byte is read as one Latin-1 char, which
+     * matches String keys made of ASCII such as ISBNs.
+     * @param key the buffer holding the key
+     * @param offset where the key starts in the buffer
+     * @param length the number of bytes of the key
+     * @return the book stored under that key, null if there is none
+     * @throws IllegalNullKeyException if key is null
+     */
+    public Book lookup(byte[] key, int offset, int length) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long start = metrics == null ? 0 : System.nanoTime();
+        Book book = null;
+        if (bloomFilter == null || bloomFilter.checkLookup(key, offset, length)) {
+            int hashIndex = (KeyHash.stringHashCode(key, offset, length) & 0x7FFFFFFF) % capacity;
+            LinkedList<Book> bucket = hashLinkedList[hashIndex];
+            if (bucket != null) {
+                for (Book candidate : bucket) {
+                    if (KeyHash.contentEquals(candidate.getKey(), key, offset, length)) {
+                        book = candidate;
+                        break;
+                    }
+                }
+            }
+            if (book == null) {
+                missedAfterFilter();
+            }
+        }
+        if (metrics != null) {
+            metrics.recordGet(System.nanoTime() - start, book != null);
+        }
+        return book;
+    }
+
+    /**
+     * return the number of buckets, which is the capacity
+     */
+    @Override
+    public int bucketCount() {
+        return hashLinkedList.length;
+    }
+
+    /**
+     * Pass every book of the chains fromBucket to toBucket - 1 to action
+     */
+    @Override
+    public void scanBuckets(int fromBucket, int toBucket, Consumer<Book> action) {
+        LinkedList<Book>[] buckets = hashLinkedList;
+        for (int i = fromBucket; i < toBucket; i++) {
+            if (buckets[i] != null) {
+                for (Book book : buckets[i]) {
+                    action.accept(book);
+                }
+            }
+        }
+    }
+
+    /**
+     * Turn on the built-in instrumentation. Calling it again keeps the existing
+     * counters.
+     * @return the metrics of this table, also available through getMetrics()
+     */
+    public TableMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new TableMetrics(this::chainLengthDistribution);
+        }
+        return metrics;
+    }
+
+    /**
+     * Turn off the instrumentation and drop every counter collected so far
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * return the metrics of this table, null if they are not enabled
+     */
+    public TableMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Walk every bucket and count how many buckets hold each chain length.
+     * Also called from JMX threads while the table may be changing, so the
+     * bucket array and every bucket are read once and nulls are tolerated; the
+     * result is then only approximate.
+     * @return an array where element i is the number of buckets with i keys
+     */
+    private long[] chainLengthDistribution() {
+        LinkedList<Book>[] buckets = hashLinkedList;
+        int[] sizes = new int[buckets.length];
+        int longest = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            LinkedList<Book> bucket = buckets[i];
+            sizes[i] = bucket == null ? 0 : bucket.size();
+            longest = Math.max(longest, sizes[i]);
+        }
+        long[] distribution = new long[longest + 1];
+        for (int size : sizes) {
+            distribution[size]++;
+        }
+        return distribution;
+    }
+
+    /**
+     * return the average length of the non empty chains, walking every bucket
+     */
+    double averageChainLength() {
+        return MetricsSnapshot.averageChainLength(chainLengthDistribution());
+    }
+
+    /**
+     * Estimate the average length of the non empty chains from at most
+     * maxBuckets buckets spread evenly over the table, so the cost does not
+     * grow with the table
+     * @return the estimate, 0 if no sampled bucket holds a key
+     */
+    double averageChainLength(int maxBuckets) {
+        LinkedList<Book>[] buckets = hashLinkedList;
+        int stride = Math.max(1, buckets.length / Math.max(1, maxBuckets));
+        long keys = 0;
+        long chains = 0;
+        for (int i = 0; i < buckets.length; i += stride) {
+            LinkedList<Book> bucket = buckets[i];
+            int size = bucket == null ? 0 : bucket.size();
+            if (size > 0) {
+                keys += size;
+                chains++;
+            }
+        }
+        return chains == 0 ? 0 : (double) keys / chains;
+    }
+
 
     /**
      * return the number of keys in the hash table
@@ -14,6 +14,7 @@ import java.util.Random;
 
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /** 
@@ -283,6 +284,121 @@ public class BookHashTableTest {
             }
         }
     }
+    
+    /**
+     * Test that the opt-in metrics count operations, misses and resizes
+     */
+    @Test
+    public void test0011_metrics_count_operations_and_resizes() throws Exception {
+        bookObject = new BookHashTable(10, 0.8);
+        if (bookObject.getMetrics() != null) {
+            fail("metrics should be disabled by default");
+        }
+        bookObject.enableMetrics();
+        insertMany(bookTable, 20);
+        bookObject.get(bookTable.get(3).getKey());
+        try {
+            bookObject.get(bookTable.get(50).getKey());
+            fail("KeyNotFoundException is not thrown");
+        }
+        catch(KeyNotFoundException e) {
+        }
+        bookObject.remove(bookTable.get(3).getKey());
+        MetricsSnapshot snapshot = bookObject.getMetrics().snapshot();
+        assertEquals(20, snapshot.getInserts());
+        assertEquals(2, snapshot.getGets());
+        assertEquals(1, snapshot.getGetMisses());
+        assertEquals(1, snapshot.getRemoves());
+        assertEquals(2, snapshot.getResizes());
+        assertEquals(10, snapshot.getResizeEvents().get(0).getOldCapacity());
+        assertEquals(21, snapshot.getResizeEvents().get(0).getNewCapacity());
+        long keys = 0;
+        long[] chains = snapshot.getChainLengthDistribution();
+        for (int i = 0; i < chains.length; i++) {
+            keys += i * chains[i];
+        }
+        assertEquals(19, keys);
+    }
+    
+    /**
+     * Test that compact() releases the buckets emptied by removeMany and keeps
+     * the capacity, as the ADT requires
+     */
+    @Test
+    public void test0012_compact_keeps_capacity() throws Exception {
+        bookObject = new BookHashTable(50, .8);
+        insertMany(bookTable, 200);
+        int capacity = bookObject.getCapacity();
+        removeMany(bookTable, 200);
+        if (bookObject.compact() == 0) {
+            fail("no empty buckets were released");
+        }
+        assertEquals(capacity, bookObject.getCapacity());
+        assertEquals(0, bookObject.compact());
+        insertMany(bookTable, 10);
+        assertEquals(bookTable.get(9), bookObject.get(bookTable.get(9).getKey()));
+    }
+    
+    /**
+     * Test that the Bloom filter keeps every stored key reachable and rejects
+     * most absent keys before the buckets are searched
+     */
+    @Test
+    public void test0013_bloom_filter_rejects_misses() throws Exception {
+        bookObject = new BookHashTable(50, .8);
+        BlockedBloomFilter filter = bookObject.enableBloomFilter(0.01);
+        insertMany(bookTable, 1000);
+        // the filter is rebuilt in place on every resize
+        assertSame(filter, bookObject.getBloomFilter());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(bookTable.get(i), bookObject.get(bookTable.get(i).getKey()));
+        }
+        int misses = 0;
+        for (int i = 1000; i < 3000; i++) {
+            try {
+                bookObject.get(bookTable.get(i).getKey());
+                fail("KeyNotFoundException is not thrown");
+            }
+            catch(KeyNotFoundException e) {
+                misses++;
+            }
+        }
+        assertEquals(2000, misses);
+        assertEquals(3000, filter.getLookups());
+        assertEquals(2000, filter.getRejected() + filter.getFalsePositives());
+        assertTrue(filter.getRejected() > 1900);
+        bookObject.remove(bookTable.get(0).getKey());
+        try {
+            bookObject.get(bookTable.get(0).getKey());
+            fail("KeyNotFoundException is not thrown");
+        }
+        catch(KeyNotFoundException e) {
+        }
+        // compacting rebuilds the same filter and keeps its counters
+        bookObject.compact();
+        assertSame(filter, bookObject.getBloomFilter());
+        assertEquals(3001, filter.getLookups());
+    }
+    
+    /**
+     * Test lookups by CharSequence and by a byte range inside a larger buffer
+     */
+    @Test
+    public void test0014_lookup_without_string() throws Exception {
+        bookObject = new BookHashTable(50, .8);
+        insertMany(bookTable, 100);
+        bookObject.enableBloomFilter(0.01);
+        String key = bookTable.get(42).getKey();
+        assertEquals(bookTable.get(42), bookObject.lookup(new StringBuilder(key)));
+        byte[] buffer = ("GET " + key + " HTTP").getBytes("US-ASCII");
+        assertEquals(bookTable.get(42), bookObject.lookup(buffer, 4, key.length()));
+        assertEquals(null, bookObject.lookup(buffer, 4, key.length() - 1));
+        assertEquals(null, bookObject.lookup(new StringBuilder(bookTable.get(500).getKey())));
+        FrozenBookHashTable frozen = bookObject.freeze();
+        assertEquals(bookTable.get(42), frozen.lookup(buffer, 4, key.length()));
+        assertEquals(bookTable.get(42), frozen.lookup(new StringBuilder(key)));
+        assertEquals(null, frozen.lookup(buffer, 0, key.length()));
+    }
 }
     
   
\ No newline at end of file
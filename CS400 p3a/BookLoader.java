@@ -0,0 +1,13 @@
+/**
+ * Loads a book that is not in a table yet, for AsyncBookTable
+ */
+@FunctionalInterface
+public interface BookLoader {
+    /**
+     * Fetch or parse the book with this key
+     * @return the book, or null if there is no such book anywhere
+     * @throws Exception if the load failed; nothing is cached and the next
+     * request for the key loads again
+     */
+    Book load(String key) throws Exception;
+}
@@ -1,11 +1,21 @@
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.function.Consumer;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 //learn how Scanner instances that are connected to the keyboard work.
 public class BookParser {
 
+    // The first line of the csv file, naming the columns
+    public static final String HEADER = "isbn13,authors,original_publication_year,title,"
+            + "language_code,average_rating,cover_type,pages";
+
     // @param booksfilename - a csv file with book database information
 
     // Parse the csv file into a list of book object 
@@ -43,5 +53,38 @@ public class BookParser {
 
     }
 
+    // Read the csv file one row at a time, so that files larger than the heap
+    // can be streamed; the header line and blank lines are skipped
+    public static void forEach(String booksfilename, Consumer<Book> action) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(booksfilename),
+                StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    action.accept(parseLine(line));
+                }
+            }
+        }
+    }
+
+    // Parse one line of the csv file, the inverse of format
+    // @throws IllegalArgumentException if the line does not have the 8 fields
+    public static Book parseLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 8) {
+            throw new IllegalArgumentException("expected 8 fields: " + line);
+        }
+        return new Book(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5],
+                fields[6], fields[7]);
+    }
+
+    // Format a book as one line of the csv file, the inverse of parse
+    // (fields can not contain commas, parse splits on every comma)
+    public static String format(Book book) {
+        return book.getKey() + "," + book.getAuthors() + "," + book.getOriginalPublicationYear()
+                + "," + book.getTitle() + "," + book.getLanguageCode() + ","
+                + book.getAverageRating() + "," + book.getCoverType() + "," + book.getPages();
+    }
+
 }
 
@@ -0,0 +1,46 @@
+import java.util.List;
+
+/**
+ * One shard of a ShardedBookTable: an in-process table (LocalPartition) or a
+ * table in another process reached through some transport (LoopbackPartition
+ * stands in for one). The operations are coarse on purpose, a lookup of many
+ * keys is one call, so that a remote partition costs one round trip per batch.
+ * 
+ * Implementations must be thread safe. Keys are never null; the sharded table
+ * checks them before they get here.
+ */
+public interface BookPartition extends AutoCloseable {
+
+    /**
+     * Add a book under its key
+     * @throws DuplicateKeyException if the key is already in this partition
+     */
+    void insert(Book book) throws DuplicateKeyException;
+
+    /**
+     * Remove a key
+     * @return true if the key was in this partition
+     */
+    boolean remove(String key);
+
+    /**
+     * Look up many keys in one call
+     * @return the books in the order of keys, null for the keys not here
+     */
+    List<Book> getAll(List<String> keys);
+
+    /**
+     * Every key in this partition, used to work out which keys move when the
+     * ring changes
+     */
+    List<String> keys();
+
+    int numKeys();
+
+    /**
+     * Release the partition once the sharded table no longer uses it
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Set operations and a hash join between two book tables, run in parallel.
+ * 
+ * The driving table is scanned through a Spliterator over its bucket range:
+ * splitting halves the range, so the fork-join pool behind parallel streams
+ * hands disjoint bucket ranges to its worker threads. Each book found is then
+ * probed in the other table with ScannableBookTable.lookup, or with get() for
+ * any other HashTableADT. Results come back as a parallel Stream and can be
+ * consumed as they are produced, e.g. with forEach, without collecting them.
+ * 
+ * Terminal operations run on ForkJoinPool.commonPool(), or on another pool when
+ * they are started from a task running in it. Neither table may be modified
+ * while a stream over it is being consumed.
+ */
+public class BookTableSets {
+    // bucket ranges smaller than this are not split further
+    static final int MIN_SPLIT = 1024;
+
+    /**
+     * A book of the left table together with the book stored under the same key
+     * in the right table
+     */
+    public static class Match {
+        private final Book left;
+        private final Book right;
+
+        Match(Book left, Book right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public Book getLeft() {
+            return left;
+        }
+
+        public Book getRight() {
+            return right;
+        }
+    }
+
+    private BookTableSets() {
+    }
+
+    /**
+     * Every book of the table, scanned partition-parallel by bucket range
+     */
+    public static Stream<Book> scan(ScannableBookTable table) {
+        return StreamSupport.stream(new BucketSpliterator(table, 0, table.bucketCount()), true);
+    }
+
+    /**
+     * The books of left whose key is also in right
+     */
+    public static Stream<Book> intersection(ScannableBookTable left,
+            HashTableADT<String, Book> right) {
+        return scan(left).filter(book -> probe(right, book.getKey()) != null);
+    }
+
+    /**
+     * The books of left whose key is not in right
+     */
+    public static Stream<Book> difference(ScannableBookTable left,
+            HashTableADT<String, Book> right) {
+        return scan(left).filter(book -> probe(right, book.getKey()) == null);
+    }
+
+    /**
+     * Every key of either table once. For a key stored in both, the book is
+     * resolver.apply(leftBook, rightBook)
+     */
+    public static Stream<Book> union(ScannableBookTable left, ScannableBookTable right,
+            BinaryOperator<Book> resolver) {
+        Stream<Book> fromLeft = scan(left).map(book -> {
+            Book other = probe(right, book.getKey());
+            return other == null ? book : resolver.apply(book, other);
+        });
+        return Stream.concat(fromLeft, difference(right, left));
+    }
+
+    /**
+     * Every pair of books, one from each table, that share a key
+     */
+    public static Stream<Match> join(ScannableBookTable left, HashTableADT<String, Book> right) {
+        return scan(left).map(book -> {
+            Book other = probe(right, book.getKey());
+            return other == null ? null : new Match(book, other);
+        }).filter(match -> match != null);
+    }
+
+    /**
+     * Find a key in any table, null when it is absent
+     */
+    static Book probe(DataStructureADT<String, Book> table, String key) {
+        try {
+            if (table instanceof ScannableBookTable) {
+                return ((ScannableBookTable) table).lookup(key);
+            }
+            return table.get(key);
+        } catch (KeyNotFoundException e) {
+            return null;
+        } catch (IllegalNullKeyException e) {
+            // cannot happen, stored keys are never null
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Walks the buckets [from, to) of a table and splits the range in half on
+     * demand
+     */
+    static class BucketSpliterator implements Spliterator<Book> {
+        private final ScannableBookTable table;
+        private int from;
+        private final int to;
+        // books of the bucket currently being handed out by tryAdvance
+        private final ArrayList<Book> pending = new ArrayList<>();
+        private int pendingIndex;
+
+        BucketSpliterator(ScannableBookTable table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Book> action) {
+            while (pendingIndex == pending.size()) {
+                if (from >= to) {
+                    return false;
+                }
+                pending.clear();
+                pendingIndex = 0;
+                table.scanBuckets(from, from + 1, pending::add);
+                from++;
+            }
+            action.accept(pending.get(pendingIndex++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Book> action) {
+            while (pendingIndex < pending.size()) {
+                action.accept(pending.get(pendingIndex++));
+            }
+            if (from < to) {
+                table.scanBuckets(from, to, action::accept);
+                from = to;
+            }
+        }
+
+        @Override
+        public Spliterator<Book> trySplit() {
+            int remaining = to - from;
+            if (remaining < MIN_SPLIT || pendingIndex < pending.size()) {
+                return null;
+            }
+            int middle = from + remaining / 2;
+            BucketSpliterator prefix = new BucketSpliterator(table, from, middle);
+            from = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            // assume the keys are spread evenly over the buckets
+            int buckets = table.bucketCount();
+            return buckets == 0 ? 0 : (long) table.numKeys() * (to - from) / buckets;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+}
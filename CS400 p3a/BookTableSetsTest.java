@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the parallel set operations between two tables
+ */
+public class BookTableSetsTest {
+
+    static ArrayList<Book> bookTable;
+    // books [0, 3000) in a chained table and [2000, 5000) in a SwissTable
+    static BookHashTable left;
+    static SwissBookHashTable right;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+        left = new BookHashTable();
+        right = new SwissBookHashTable();
+        for (int i = 0; i < 3000; i++) {
+            left.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        for (int i = 2000; i < 5000; i++) {
+            right.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+    }
+
+    /**
+     * Intersection and difference split the left table by key
+     */
+    @Test
+    public void test000_intersection_and_difference() {
+        List<Book> both = BookTableSets.intersection(left, right).collect(Collectors.toList());
+        assertEquals(1000, both.size());
+        assertTrue(both.contains(bookTable.get(2500)));
+        assertEquals(2000, BookTableSets.difference(left, right).count());
+        assertEquals(2000, BookTableSets.difference(right, left).count());
+        assertEquals(3000, BookTableSets.scan(left).distinct().count());
+    }
+
+    /**
+     * Union keeps every key once and resolves the shared ones
+     */
+    @Test
+    public void test001_union_with_resolver() {
+        Book marker = new Book("x", "", "", "", "", "", "", "");
+        List<Book> all = BookTableSets.union(left, right, (a, b) -> marker)
+                .collect(Collectors.toList());
+        assertEquals(5000, all.size());
+        assertEquals(1000, all.stream().filter(book -> book == marker).count());
+    }
+
+    /**
+     * Join pairs books by key, also against a frozen table and a plain ADT
+     */
+    @Test
+    public void test002_join() throws Exception {
+        List<BookTableSets.Match> matches = BookTableSets.join(left.freeze(), right)
+                .collect(Collectors.toList());
+        assertEquals(1000, matches.size());
+        for (BookTableSets.Match match : matches) {
+            assertEquals(match.getLeft().getKey(), match.getRight().getKey());
+        }
+        assertEquals(1000, BookTableSets.intersection(left, new HashTableADTView(right)).count());
+    }
+
+    /**
+     * A HashTableADT that is not scannable, so probes go through get()
+     */
+    static class HashTableADTView implements HashTableADT<String, Book> {
+        private final SwissBookHashTable table;
+
+        HashTableADTView(SwissBookHashTable table) {
+            this.table = table;
+        }
+
+        public void insert(String key, Book value) {
+        }
+
+        public boolean remove(String key) {
+            return false;
+        }
+
+        public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+            return table.get(key);
+        }
+
+        public int numKeys() {
+            return table.numKeys();
+        }
+
+        public double getLoadFactorThreshold() {
+            return table.getLoadFactorThreshold();
+        }
+
+        public int getCapacity() {
+            return table.getCapacity();
+        }
+
+        public int getCollisionResolutionScheme() {
+            return table.getCollisionResolutionScheme();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+
+/**
+ * One immutable version of a VersionedBookHashTable.
+ * 
+ * Taking a snapshot is a single volatile read and costs O(1); the snapshot shares
+ * all of its nodes with the table and with the other versions. Reads never lock
+ * and never see a later change. insert and remove throw
+ * UnsupportedOperationException, changes go through the table that produced the
+ * snapshot.
+ */
+public class BookTableSnapshot implements DataStructureADT<String, Book> {
+    // the empty version every table starts from
+    static final BookTableSnapshot EMPTY = new BookTableSnapshot(BookTrie.EMPTY, 0, 0);
+
+    private final Object root;
+    private final int numKeys;
+    private final long version;
+
+    BookTableSnapshot(Object root, int numKeys, long version) {
+        this.root = root;
+        this.numKeys = numKeys;
+        this.version = version;
+    }
+
+    /**
+     * Returns the value associated with the specified key in this version
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, throw KeyNotFoundException().
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        Book book = BookTrie.get(root, key, BookTrie.hash(key));
+        if (book == null) {
+            throw new KeyNotFoundException();
+        }
+        return book;
+    }
+
+    /**
+     * return true if this version holds the key
+     */
+    public boolean containsKey(String key) {
+        return key != null && BookTrie.get(root, key, BookTrie.hash(key)) != null;
+    }
+
+    /**
+     * Snapshots are read-only
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void insert(String key, Book value) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    /**
+     * Snapshots are read-only
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(String key) {
+        throw new UnsupportedOperationException("snapshot is read-only");
+    }
+
+    /**
+     * return the number of keys in this version
+     */
+    @Override
+    public int numKeys() {
+        return numKeys;
+    }
+
+    /**
+     * return the version number, which goes up by one with every publish
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * return every book of this version, in no particular order
+     */
+    public ArrayList<Book> books() {
+        ArrayList<Book> books = new ArrayList<>(numKeys);
+        BookTrie.forEach(root, books::add);
+        return books;
+    }
+
+    Object root() {
+        return root;
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A recorded sequence of table operations, as written by RecordingBookTable
+ * and read back for TraceReplayer.
+ * 
+ * File format: the magic bytes "BKTR", a version byte, then one record per
+ * operation:
+ * 
+ *   byte     operation in bits 0-1 (INSERT, GET, REMOVE), outcome in bits 2-3
+ *   varint   nanoseconds since the previous operation
+ *   varint   key id; 0 is the null key, and the next unused id introduces a
+ *            new key, followed by its length (varint) and UTF-8 bytes
+ * 
+ * Every key is spelled out once, so a record of a key seen before takes three
+ * to five bytes. Varints are unsigned LEB128: seven bits per byte, low bits
+ * first, high bit set on every byte but the last.
+ * 
+ * A loaded trace keeps the operations in parallel arrays, so replaying it does
+ * no decoding or allocation.
+ */
+public final class BookTrace {
+    static final byte[] MAGIC = {'B', 'K', 'T', 'R'};
+    static final int VERSION = 1;
+
+    public static final int INSERT = 0;
+    public static final int GET = 1;
+    public static final int REMOVE = 2;
+
+    /** insert added the key, get found it, remove removed it */
+    public static final int OK = 0;
+    /** insert found a duplicate, get did not find the key, remove found nothing */
+    public static final int MISS = 1;
+    /** the key was null */
+    public static final int NULL_KEY = 2;
+
+    private final byte[] ops;
+    private final int[] keyIds;
+    private final long[] times;
+    // the key of each id, null at id 0
+    private final String[] keys;
+
+    private BookTrace(byte[] ops, int[] keyIds, long[] times, String[] keys) {
+        this.ops = ops;
+        this.keyIds = keyIds;
+        this.times = times;
+        this.keys = keys;
+    }
+
+    /**
+     * Read a whole trace file
+     */
+    public static BookTrace read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Read a whole trace
+     * @throws IOException if the stream is not a trace, or ends inside a record
+     */
+    public static BookTrace read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readUnsignedByte() != VERSION) {
+            throw new IOException("not a version " + VERSION + " book trace");
+        }
+        byte[] ops = new byte[1024];
+        int[] keyIds = new int[1024];
+        long[] times = new long[1024];
+        ArrayList<String> keys = new ArrayList<>();
+        keys.add(null);
+        int n = 0;
+        long time = 0;
+        int first;
+        while ((first = in.read()) >= 0) {
+            if (n == ops.length) {
+                ops = Arrays.copyOf(ops, n * 2);
+                keyIds = Arrays.copyOf(keyIds, n * 2);
+                times = Arrays.copyOf(times, n * 2);
+            }
+            time += readVarint(in);
+            long id = readVarint(in);
+            if (id == keys.size()) {
+                byte[] bytes = new byte[(int) readVarint(in)];
+                in.readFully(bytes);
+                keys.add(new String(bytes, StandardCharsets.UTF_8));
+            } else if (id > keys.size()) {
+                throw new IOException("unknown key id " + id + " in record " + n);
+            }
+            ops[n] = (byte) first;
+            keyIds[n] = (int) id;
+            times[n] = time;
+            n++;
+        }
+        return new BookTrace(Arrays.copyOf(ops, n), Arrays.copyOf(keyIds, n),
+                Arrays.copyOf(times, n), keys.toArray(new String[0]));
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("trace ends inside a record");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("varint too long");
+    }
+
+    /**
+     * the number of operations
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * the number of distinct keys
+     */
+    public int distinctKeys() {
+        return keys.length - 1;
+    }
+
+    /**
+     * INSERT, GET or REMOVE
+     */
+    public int operation(int i) {
+        return ops[i] & 3;
+    }
+
+    /**
+     * OK, MISS or NULL_KEY: what the operation did when it was recorded
+     */
+    public int outcome(int i) {
+        return (ops[i] >>> 2) & 3;
+    }
+
+    public String key(int i) {
+        return keys[keyIds[i]];
+    }
+
+    /**
+     * a number for the key of operation i, the same for every use of the key
+     */
+    int keyId(int i) {
+        return keyIds[i];
+    }
+
+    /**
+     * nanoseconds from the first operation to operation i
+     */
+    public long time(int i) {
+        return times[i] - times[0];
+    }
+
+    /**
+     * the number of operations of one kind
+     */
+    public int count(int operation) {
+        int n = 0;
+        for (int i = 0; i < ops.length; i++) {
+            if (operation(i) == operation) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.function.Consumer;
+
+/**
+ * Algorithm Explanations:
+ * 
+ * A persistent hash array mapped trie (HAMT) of books keyed by ISBN. Each level
+ * consumes 5 bits of the key's hash; a node keeps a 32-bit bitmap of which of its
+ * 32 children exist and a packed array of just those children, so a sparse node
+ * costs only as much as the children it has. A child is either a Book (a leaf) or
+ * another node. Keys whose full 32-bit hashes are equal share a CollisionNode.
+ * 
+ * Nodes are never modified. An update copies only the nodes on the path from the
+ * root to the changed leaf (at most 7 levels) and shares everything else with the
+ * previous version, which is what makes old versions cheap to keep around.
+ * 
+ * Package-private: used through BookTableSnapshot and VersionedBookHashTable.
+ */
+final class BookTrie {
+    // bits of the hash consumed per level
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * An inner node: which children exist, and the children themselves
+     */
+    static final class BitmapNode {
+        final int bitmap;
+        // each element is a Book, a BitmapNode or a CollisionNode
+        final Object[] slots;
+
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Books whose keys have exactly the same hash
+     */
+    static final class CollisionNode {
+        final int hash;
+        final Book[] books;
+
+        CollisionNode(int hash, Book[] books) {
+            this.hash = hash;
+            this.books = books;
+        }
+    }
+
+    /**
+     * Reports what an update did, so callers can keep the key count
+     */
+    static final class Change {
+        // true if a new key was added by put
+        boolean added;
+        // the book that was replaced or removed, null if none
+        Book previous;
+    }
+
+    // the root of an empty trie
+    static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+    private BookTrie() {
+    }
+
+    /**
+     * Spread the cached String hash so the low levels see the high bits too
+     */
+    static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Find the book with the given key
+     * @return the book, null if it is not in the trie
+     */
+    static Book get(Object node, String key, int hash) {
+        int shift = 0;
+        while (true) {
+            if (node instanceof BitmapNode) {
+                BitmapNode bitmapNode = (BitmapNode) node;
+                int bit = 1 << ((hash >>> shift) & MASK);
+                if ((bitmapNode.bitmap & bit) == 0) {
+                    return null;
+                }
+                node = bitmapNode.slots[Integer.bitCount(bitmapNode.bitmap & (bit - 1))];
+                shift += BITS;
+            } else if (node instanceof Book) {
+                Book book = (Book) node;
+                return key.equals(book.getKey()) ? book : null;
+            } else {
+                CollisionNode collision = (CollisionNode) node;
+                if (collision.hash == hash) {
+                    for (Book book : collision.books) {
+                        if (key.equals(book.getKey())) {
+                            return book;
+                        }
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Add or replace the book stored under key
+     * @return the new node, the same node if nothing changed
+     */
+    static Object put(Object node, int shift, int hash, String key, Book book, Change change) {
+        if (node instanceof CollisionNode) {
+            CollisionNode collision = (CollisionNode) node;
+            if (collision.hash != hash) {
+                change.added = true;
+                return merge(collision, collision.hash, book, hash, shift);
+            }
+            Book[] books = collision.books;
+            for (int i = 0; i < books.length; i++) {
+                if (key.equals(books[i].getKey())) {
+                    change.previous = books[i];
+                    Book[] copy = books.clone();
+                    copy[i] = book;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Book[] copy = new Book[books.length + 1];
+            System.arraycopy(books, 0, copy, 0, books.length);
+            copy[books.length] = book;
+            change.added = true;
+            return new CollisionNode(hash, copy);
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+        Object[] slots = bitmapNode.slots;
+        if ((bitmapNode.bitmap & bit) == 0) {
+            Object[] copy = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            copy[index] = book;
+            System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+            change.added = true;
+            return new BitmapNode(bitmapNode.bitmap | bit, copy);
+        }
+        Object child = slots[index];
+        Object newChild;
+        if (child instanceof Book) {
+            Book existing = (Book) child;
+            if (key.equals(existing.getKey())) {
+                change.previous = existing;
+                newChild = book;
+            } else {
+                change.added = true;
+                newChild = merge(existing, hash(existing.getKey()), book, hash, shift + BITS);
+            }
+        } else {
+            newChild = put(child, shift + BITS, hash, key, book, change);
+            if (newChild == child) {
+                return node;
+            }
+        }
+        Object[] copy = slots.clone();
+        copy[index] = newChild;
+        return new BitmapNode(bitmapNode.bitmap, copy);
+    }
+
+    /**
+     * Build the smallest subtree holding an existing leaf or collision node and a
+     * new book, starting at the given level
+     */
+    private static Object merge(Object existing, int existingHash, Book book, int hash, int shift) {
+        if (existingHash == hash) {
+            return new CollisionNode(hash, new Book[] {(Book) existing, book});
+        }
+        int existingFragment = (existingHash >>> shift) & MASK;
+        int fragment = (hash >>> shift) & MASK;
+        if (existingFragment == fragment) {
+            return new BitmapNode(1 << fragment,
+                    new Object[] {merge(existing, existingHash, book, hash, shift + BITS)});
+        }
+        Object[] slots = existingFragment < fragment ? new Object[] {existing, book}
+                : new Object[] {book, existing};
+        return new BitmapNode((1 << existingFragment) | (1 << fragment), slots);
+    }
+
+    /**
+     * Remove the book stored under key
+     * @return the new node; the same node if the key was absent; a Book when an
+     *         inner node is left with a single leaf, which the parent then stores
+     *         directly; null when a non-root node becomes empty
+     */
+    static Object remove(Object node, int shift, int hash, String key, Change change) {
+        if (node instanceof CollisionNode) {
+            CollisionNode collision = (CollisionNode) node;
+            if (collision.hash != hash) {
+                return node;
+            }
+            Book[] books = collision.books;
+            for (int i = 0; i < books.length; i++) {
+                if (key.equals(books[i].getKey())) {
+                    change.previous = books[i];
+                    if (books.length == 2) {
+                        return books[1 - i];
+                    }
+                    Book[] copy = new Book[books.length - 1];
+                    System.arraycopy(books, 0, copy, 0, i);
+                    System.arraycopy(books, i + 1, copy, i, books.length - i - 1);
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            return node;
+        }
+        BitmapNode bitmapNode = (BitmapNode) node;
+        int bit = 1 << ((hash >>> shift) & MASK);
+        if ((bitmapNode.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = Integer.bitCount(bitmapNode.bitmap & (bit - 1));
+        Object child = bitmapNode.slots[index];
+        Object newChild;
+        if (child instanceof Book) {
+            if (!key.equals(((Book) child).getKey())) {
+                return node;
+            }
+            change.previous = (Book) child;
+            newChild = null;
+        } else {
+            newChild = remove(child, shift + BITS, hash, key, change);
+            if (newChild == child) {
+                return node;
+            }
+        }
+        Object[] slots = bitmapNode.slots;
+        if (newChild != null) {
+            // a child that shrank to one leaf is inlined, which may let this node
+            // collapse into its parent as well
+            if (slots.length == 1 && newChild instanceof Book && shift > 0) {
+                return newChild;
+            }
+            Object[] copy = slots.clone();
+            copy[index] = newChild;
+            return new BitmapNode(bitmapNode.bitmap, copy);
+        }
+        if (slots.length == 1) {
+            return shift == 0 ? EMPTY : null;
+        }
+        if (slots.length == 2 && shift > 0 && slots[1 - index] instanceof Book) {
+            return slots[1 - index];
+        }
+        Object[] copy = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+        return new BitmapNode(bitmapNode.bitmap & ~bit, copy);
+    }
+
+    /**
+     * Call the visitor with every book in the trie
+     */
+    static void forEach(Object node, Consumer<Book> visitor) {
+        if (node instanceof Book) {
+            visitor.accept((Book) node);
+        } else if (node instanceof CollisionNode) {
+            for (Book book : ((CollisionNode) node).books) {
+                visitor.accept(book);
+            }
+        } else {
+            for (Object child : ((BitmapNode) node).slots) {
+                forEach(child, visitor);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * Streaming exports of a catalogue, from a books.csv file or a table, to a file
+ * in books.csv format: sorted by ISBN or rating with ExternalBookSorter, or the
+ * top k books of every language with TopKBooks. A csv file is read one row at a
+ * time, so neither export needs the catalogue to fit in the heap.
+ */
+public class CatalogueExport {
+
+    private CatalogueExport() {
+    }
+
+    /**
+     * Sort a csv file into another
+     * @param memoryBudget the estimated bytes of books held in memory
+     * @return the number of books written
+     */
+    public static long sort(String booksfilename, Path out, Comparator<Book> order,
+            long memoryBudget, Path spillDirectory) throws IOException {
+        try (ExternalBookSorter sorter = new ExternalBookSorter(order, memoryBudget,
+                spillDirectory);
+                Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            try {
+                BookParser.forEach(booksfilename, book -> {
+                    try {
+                        sorter.add(book);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return sorter.finish(writer);
+        }
+    }
+
+    /**
+     * Sort the books of a table into a csv file
+     * @return the number of books written
+     */
+    public static long sort(ScannableBookTable table, Path out, Comparator<Book> order,
+            long memoryBudget, Path spillDirectory) throws IOException {
+        try (ExternalBookSorter sorter = new ExternalBookSorter(order, memoryBudget,
+                spillDirectory);
+                Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            try {
+                table.scanBuckets(0, table.bucketCount(), book -> {
+                    try {
+                        sorter.add(book);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return sorter.finish(writer);
+        }
+    }
+
+    /**
+     * Write the k best rated books of every language of a csv file
+     * @return the number of books written
+     */
+    public static long topRatedByLanguage(String booksfilename, Path out, int k)
+            throws IOException {
+        TopKBooks top = new TopKBooks(Book::getLanguageCode,
+                ExternalBookSorter.BEST_RATED_FIRST, k);
+        BookParser.forEach(booksfilename, top::add);
+        try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            return top.write(writer);
+        }
+    }
+
+    /**
+     *   java CatalogueExport isbn   books.csv out.csv [memory budget in MB]
+     *   java CatalogueExport rating books.csv out.csv [memory budget in MB]
+     *   java CatalogueExport top    books.csv out.csv [k]
+     * Sorting by rating puts the best rated books first. Runs are spilled to the
+     * temporary directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: CatalogueExport isbn|rating|top <books.csv> <out.csv>"
+                    + " [budget MB | k]");
+            return;
+        }
+        Path out = Path.of(args[2]);
+        long start = System.nanoTime();
+        long n;
+        if (args[0].equals("top")) {
+            int k = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            n = topRatedByLanguage(args[1], out, k);
+        } else {
+            Comparator<Book> order = args[0].equals("rating")
+                    ? ExternalBookSorter.BEST_RATED_FIRST
+                    : ExternalBookSorter.BY_ISBN;
+            long budget = (args.length > 3 ? Long.parseLong(args[3]) : 64) << 20;
+            n = sort(args[1], out, order, budget, Path.of(System.getProperty("java.io.tmpdir")));
+        }
+        System.out.printf("wrote %d books to %s in %.1f ms%n", n, out,
+                (System.nanoTime() - start) / 1e6);
+    }
+}
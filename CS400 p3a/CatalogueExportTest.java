@@ -0,0 +1,194 @@
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the external sort and top k exports against sorting in memory
+ */
+public class CatalogueExportTest {
+
+    static ArrayList<Book> books;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    // the header, then the books in the given order
+    private static List<String> expected(List<Book> sorted) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(BookParser.HEADER);
+        for (Book book : sorted) {
+            lines.add(BookParser.format(book));
+        }
+        return lines;
+    }
+
+    private long filesIn(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Check a sort of the csv file by ISBN with a budget so small that the runs
+     * need more than one merge pass
+     */
+    @Test
+    public void test001_sort_by_isbn_in_passes() throws Exception {
+        Path spill = Files.createDirectory(dir.resolve("spill"));
+        Path out = dir.resolve("by-isbn.csv");
+        ExternalBookSorter sorter = new ExternalBookSorter(ExternalBookSorter.BY_ISBN,
+                32 * 1024, spill);
+        BookParser.forEach(BookHashTableTest.BOOKS, book -> {
+            try {
+                sorter.add(book);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            assertEquals(books.size(), sorter.finish(writer));
+        }
+        assertTrue(sorter.getRuns() > ExternalBookSorter.MAX_FAN_IN, "runs "
+                + sorter.getRuns());
+        assertEquals(0, filesIn(spill));
+
+        ArrayList<Book> sorted = new ArrayList<>(books);
+        sorted.sort(ExternalBookSorter.BY_ISBN);
+        assertEquals(expected(sorted), Files.readAllLines(out, StandardCharsets.UTF_8));
+        // the export reads back like the original file
+        assertEquals(books.size(), BookParser.parse(out.toString()).size());
+    }
+
+    /**
+     * Check a sort of a table by rating, best first, and that a sort within the
+     * budget writes no run at all
+     */
+    @Test
+    public void test002_sort_table_by_rating() throws Exception {
+        BookHashTable table = new BookHashTable();
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        Comparator<Book> best = ExternalBookSorter.BEST_RATED_FIRST;
+        ArrayList<Book> sorted = new ArrayList<>(books);
+        sorted.sort(best);
+
+        Path out = dir.resolve("by-rating.csv");
+        assertEquals(books.size(), CatalogueExport.sort(table, out, best, 256 * 1024, dir));
+        assertEquals(expected(sorted), Files.readAllLines(out, StandardCharsets.UTF_8));
+
+        Path inMemory = dir.resolve("in-memory.csv");
+        CatalogueExport.sort(table, inMemory, best, Long.MAX_VALUE, dir);
+        assertEquals(expected(sorted), Files.readAllLines(inMemory, StandardCharsets.UTF_8));
+        // the two exports, no run files left behind
+        assertEquals(2, filesIn(dir));
+    }
+
+    /**
+     * Check the top 3 rated books of every language against a full sort
+     */
+    @Test
+    public void test003_top_k_per_language() throws Exception {
+        Path out = dir.resolve("top.csv");
+        long written = CatalogueExport.topRatedByLanguage(BookHashTableTest.BOOKS, out, 3);
+
+        Comparator<Book> best = ExternalBookSorter.BEST_RATED_FIRST;
+        HashMap<String, List<Book>> byLanguage = new HashMap<>();
+        for (Book book : books) {
+            byLanguage.computeIfAbsent(book.getLanguageCode(), l -> new ArrayList<>())
+                    .add(book);
+        }
+        ArrayList<String> languages = new ArrayList<>(byLanguage.keySet());
+        languages.sort(null);
+        ArrayList<Book> top = new ArrayList<>();
+        for (String language : languages) {
+            List<Book> group = byLanguage.get(language);
+            group.sort(best);
+            top.addAll(group.subList(0, Math.min(3, group.size())));
+        }
+        assertEquals(top.size(), written);
+        assertEquals(expected(top), Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Check that books without a readable average_rating rank below every rated
+     * book, both in a sort by rating and in the top k
+     */
+    @Test
+    public void test004_unreadable_ratings_rank_last() throws Exception {
+        Book good = new Book("9780000000001", "A", "2001", "Good", "eng", "4.50", "Paperback", "100");
+        Book poor = new Book("9780000000002", "B", "2002", "Poor", "eng", "1.25", "Paperback", "100");
+        Book empty = new Book("9780000000003", "C", "2003", "Empty", "eng", "", "Paperback", "100");
+        Book garbled = new Book("9780000000004", "D", "2004", "Garbled", "eng", "n/a", "Paperback", "100");
+        ArrayList<Book> sorted = new ArrayList<>(List.of(empty, poor, garbled, good));
+        sorted.sort(ExternalBookSorter.BEST_RATED_FIRST);
+        assertEquals(List.of(good, poor, empty, garbled), sorted);
+
+        TopKBooks top = new TopKBooks(Book::getLanguageCode, ExternalBookSorter.BEST_RATED_FIRST, 2);
+        for (Book book : List.of(empty, good, garbled, poor)) {
+            top.add(book);
+        }
+        assertEquals(List.of(good, poor), top.top("eng"));
+
+        Path csv = dir.resolve("ratings.csv");
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(BookParser.HEADER);
+        for (Book book : List.of(empty, good, garbled, poor)) {
+            lines.add(BookParser.format(book));
+        }
+        Files.write(csv, lines, StandardCharsets.UTF_8);
+        Path out = dir.resolve("top.csv");
+        assertEquals(1, CatalogueExport.topRatedByLanguage(csv.toString(), out, 1));
+        assertEquals(expected(List.of(good)), Files.readAllLines(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Check that a merge pass that fails half way leaves no run file behind
+     * once the sorter is closed
+     */
+    @Test
+    public void test005_failed_merge_pass_leaves_no_runs() throws Exception {
+        Path spill = Files.createDirectory(dir.resolve("spill"));
+        AtomicInteger comparisons = new AtomicInteger(-1);
+        Comparator<Book> failing = (a, b) -> {
+            if (comparisons.get() >= 0 && comparisons.incrementAndGet() > 1000) {
+                throw new IllegalStateException("comparator failed");
+            }
+            return ExternalBookSorter.BY_ISBN.compare(a, b);
+        };
+        // a budget of one byte spills every book as its own run
+        try (ExternalBookSorter sorter = new ExternalBookSorter(failing, 1, spill)) {
+            for (int i = 0; i < 4 * ExternalBookSorter.MAX_FAN_IN; i++) {
+                sorter.add(books.get(i));
+            }
+            comparisons.set(0);
+            try {
+                sorter.finish(Writer.nullWriter());
+                fail("the merge should fail");
+            } catch (IllegalStateException e) {
+                assertEquals("comparator failed", e.getMessage());
+            }
+        }
+        assertEquals(0, filesIn(spill));
+    }
+}
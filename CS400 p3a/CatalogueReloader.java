@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Refreshes a live table from a new version of the catalogue csv by applying
+ * only the rows that changed.
+ * 
+ * The reloader remembers a 64-bit fingerprint of every row it has applied (see
+ * FingerprintIndex). A reload maps the new file and, for each row, looks the key
+ * up by its raw bytes and compares the row's fingerprint with the stored one.
+ * Unchanged rows cost a hash and a probe and allocate nothing; new rows are
+ * inserted, changed rows are replaced (remove then insert), and keys missing
+ * from the new file are removed. Only rows that changed are decoded into Books,
+ * so the work done on the table scales with the number of changes.
+ * 
+ * The reloader must be the only writer of the table's contents, otherwise its
+ * fingerprints no longer describe what the table holds.
+ */
+public class CatalogueReloader {
+    // seed for row fingerprints, unrelated to the table's own hashing
+    private static final long FINGERPRINT_SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * What one reload did
+     */
+    public static class Report {
+        private final int added;
+        private final int removed;
+        private final int changed;
+        private final int unchanged;
+        private final long nanos;
+
+        Report(int added, int removed, int changed, int unchanged, long nanos) {
+            this.added = added;
+            this.removed = removed;
+            this.changed = changed;
+            this.unchanged = unchanged;
+            this.nanos = nanos;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "added=" + added + ", removed=" + removed + ", changed=" + changed
+                    + ", unchanged=" + unchanged + " in " + nanos / 1000000 + "ms";
+        }
+    }
+
+    private final DataStructureADT<String, Book> table;
+    private final FingerprintIndex index = new FingerprintIndex();
+    // incremented by every reload, marks the rows seen by it
+    private int generation;
+    // reused to hold the current row
+    private byte[] row = new byte[256];
+
+    /**
+     * @param table the live table to keep up to date
+     */
+    public CatalogueReloader(DataStructureADT<String, Book> table) {
+        this.table = table;
+    }
+
+    /**
+     * Tell the reloader which file the table was loaded from, without changing
+     * the table, so the next reload only applies the differences to it
+     * @param booksfilename the csv file the table currently holds
+     */
+    public void seed(String booksfilename) throws IOException {
+        generation++;
+        RowCursor rows = new RowCursor(map(booksfilename));
+        for (int length = rows.next(); length >= 0; length = rows.next()) {
+            int keyLength = keyLength(length);
+            long fingerprint = KeyHash.hash(row, 0, length, FINGERPRINT_SEED);
+            int slot = index.indexOf(row, 0, keyLength);
+            if (slot < 0) {
+                index.add(latin1(keyLength), fingerprint, generation);
+            } else {
+                index.update(slot, fingerprint, generation);
+            }
+        }
+    }
+
+    /**
+     * Bring the table in line with the given file
+     * @param booksfilename the new version of the catalogue csv
+     * @return how many rows were added, removed, changed and left alone
+     */
+    public Report reload(String booksfilename) throws IOException {
+        long start = System.nanoTime();
+        generation++;
+        int added = 0;
+        int changed = 0;
+        int unchanged = 0;
+        int removed = 0;
+        try {
+            RowCursor rows = new RowCursor(map(booksfilename));
+            for (int length = rows.next(); length >= 0; length = rows.next()) {
+                int keyLength = keyLength(length);
+                long fingerprint = KeyHash.hash(row, 0, length, FINGERPRINT_SEED);
+                int slot = index.indexOf(row, 0, keyLength);
+                if (slot >= 0 && index.fingerprint(slot) == fingerprint) {
+                    index.touch(slot, generation);
+                    unchanged++;
+                    continue;
+                }
+                Book book = rows.decode(length);
+                // a table filled before the reloader was attached may hold the key
+                // even when the index does not
+                if (table.remove(book.getKey())) {
+                    changed++;
+                } else {
+                    added++;
+                }
+                table.insert(book.getKey(), book);
+                if (slot >= 0) {
+                    index.update(slot, fingerprint, generation);
+                } else {
+                    index.add(latin1(keyLength), fingerprint, generation);
+                }
+            }
+            for (String key : index.removeUnseen(generation)) {
+                if (table.remove(key)) {
+                    removed++;
+                }
+            }
+        } catch (IllegalNullKeyException | DuplicateKeyException e) {
+            // cannot happen, every key comes from a row and is removed before insert
+            throw new IllegalStateException(e);
+        }
+        return new Report(added, removed, changed, unchanged, System.nanoTime() - start);
+    }
+
+    /**
+     * return the number of keys the reloader is tracking
+     */
+    public int numTrackedKeys() {
+        return index.size();
+    }
+
+    /**
+     * Walks the data rows of a mapped csv file, splitting lines the same way
+     * LazyBookParser does and skipping the header. Each row is copied into the
+     * reloader's row array.
+     */
+    private class RowCursor {
+        private final ByteBuffer buffer;
+        private int start;
+        private int rowStart;
+        private boolean header = true;
+
+        RowCursor(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Move to the next data row
+         * @return its length, -1 at the end of the file
+         */
+        int next() {
+            int limit = buffer.limit();
+            while (start < limit) {
+                int end = start;
+                while (end < limit && buffer.get(end) != '\n') {
+                    end++;
+                }
+                int rowEnd = end;
+                if (rowEnd > start && buffer.get(rowEnd - 1) == '\r') {
+                    rowEnd--;
+                }
+                rowStart = start;
+                start = end + 1;
+                if (header) {
+                    header = false;
+                } else if (rowEnd > rowStart) {
+                    int length = rowEnd - rowStart;
+                    if (row.length < length) {
+                        row = new byte[Math.max(length, row.length * 2)];
+                    }
+                    buffer.get(rowStart, row, 0, length);
+                    return length;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Decode the current row into an ordinary Book, so the table does not
+         * keep the mapped file alive
+         */
+        Book decode(int length) {
+            LazyBook lazy = new LazyBook(buffer, rowStart, length);
+            return new Book(lazy.getKey(), lazy.getAuthors(), lazy.getOriginalPublicationYear(),
+                    lazy.getTitle(), lazy.getLanguageCode(), lazy.getAverageRating(),
+                    lazy.getCoverType(), lazy.getPages());
+        }
+    }
+
+    // the key bytes of the current row as the index compares them
+    private String latin1(int keyLength) {
+        return new String(row, 0, keyLength, StandardCharsets.ISO_8859_1);
+    }
+
+    // the key is everything before the first comma
+    private int keyLength(int length) {
+        for (int i = 0; i < length; i++) {
+            if (row[i] == ',') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static ByteBuffer map(String booksfilename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(booksfilename),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test that reloads apply exactly the rows that changed
+ */
+public class CatalogueReloaderTest {
+
+    static List<String> lines;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        lines = Files.readAllLines(Path.of(BookHashTableTest.BOOKS), StandardCharsets.UTF_8);
+    }
+
+    // header plus data rows [0, 200)
+    private String version1() throws Exception {
+        Path file = dir.resolve("v1.csv");
+        Files.write(file, lines.subList(0, 201), StandardCharsets.UTF_8);
+        return file.toString();
+    }
+
+    // row 5 changed, rows 10 to 19 gone, rows 200 to 209 new
+    private String version2() throws Exception {
+        ArrayList<String> next = new ArrayList<>(lines.subList(0, 211));
+        next.set(6, next.get(6).replaceFirst(",[0-9.]+,([01]),", ",1.5,$1,"));
+        next.subList(11, 21).clear();
+        Path file = dir.resolve("v2.csv");
+        Files.write(file, next, StandardCharsets.UTF_8);
+        return file.toString();
+    }
+
+    /**
+     * Load into an empty table, then apply a new version twice
+     */
+    @Test
+    public void test000_reload_applies_only_changes() throws Exception {
+        BookHashTable table = new BookHashTable();
+        CatalogueReloader reloader = new CatalogueReloader(table);
+        CatalogueReloader.Report report = reloader.reload(version1());
+        assertEquals(200, report.getAdded());
+        assertEquals(200, table.numKeys());
+
+        report = reloader.reload(version2());
+        assertEquals(10, report.getAdded());
+        assertEquals(10, report.getRemoved());
+        assertEquals(1, report.getChanged());
+        assertEquals(189, report.getUnchanged());
+        assertEquals(200, table.numKeys());
+        String changedKey = lines.get(6).substring(0, lines.get(6).indexOf(','));
+        assertEquals("1.5", table.get(changedKey).getAverageRating());
+        try {
+            table.get(lines.get(11).substring(0, lines.get(11).indexOf(',')));
+            fail("KeyNotFoundException is not thrown");
+        }
+        catch(KeyNotFoundException e) {
+        }
+
+        report = reloader.reload(version2());
+        assertEquals(200, report.getUnchanged());
+        assertEquals(0, report.getAdded() + report.getRemoved() + report.getChanged());
+    }
+
+    /**
+     * A table loaded with BookParser can be attached with seed()
+     */
+    @Test
+    public void test001_seed_existing_table() throws Exception {
+        String v1 = version1();
+        BookHashTable table = new BookHashTable();
+        for (Book book : BookParser.parse(v1)) {
+            table.insert(book.getKey(), book);
+        }
+        CatalogueReloader reloader = new CatalogueReloader(table);
+        reloader.seed(v1);
+        assertEquals(200, reloader.numTrackedKeys());
+        CatalogueReloader.Report report = reloader.reload(version2());
+        assertEquals(10, report.getAdded());
+        assertEquals(10, report.getRemoved());
+        assertEquals(1, report.getChanged());
+        assertEquals(189, report.getUnchanged());
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The index of the cold tier of TieredBookTable: for every cold key, the block
+ * holding its row and how often it was read while cold.
+ * 
+ * Linear probing over parallel arrays, kept at most half full, with removals
+ * shifting the following entries back, like FingerprintIndex. A cold entry costs
+ * its key and three array slots, instead of a map node and a boxed value.
+ */
+final class ColdIndex {
+    private String[] keys = new String[16];
+    private int[] blocks = new int[16];
+    private int[] hits = new int[16];
+    private int size;
+
+    private static int slotFor(int stringHash, int length) {
+        return (int) KeyHash.mix(stringHash) & (length - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the key, -1 if absent
+     */
+    int indexOf(String key) {
+        int mask = keys.length - 1;
+        for (int slot = slotFor(key.hashCode(), keys.length); keys[slot] != null;
+                slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * the number of slots; key(slot) is null for the free ones
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    String key(int slot) {
+        return keys[slot];
+    }
+
+    int block(int slot) {
+        return blocks[slot];
+    }
+
+    void setBlock(int slot, int block) {
+        blocks[slot] = block;
+    }
+
+    /**
+     * Count a read of the key in this slot
+     * @return the reads so far
+     */
+    int hit(int slot) {
+        return ++hits[slot];
+    }
+
+    /**
+     * Halve the read counts of every key, so old reads weigh less than new ones
+     */
+    void age() {
+        for (int slot = 0; slot < hits.length; slot++) {
+            hits[slot] >>>= 1;
+        }
+    }
+
+    /**
+     * Add a key that is not in the index yet
+     * @return its slot
+     */
+    int add(String key, int block) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = slotFor(key.hashCode(), keys.length);
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        blocks[slot] = block;
+        hits[slot] = 0;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Remove the key in this slot
+     */
+    void removeAt(int slot) {
+        int mask = keys.length - 1;
+        // shift back every following entry that would no longer be reachable
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = slotFor(keys[next].hashCode(), keys.length);
+            // move the entry if its home is not between the hole and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                blocks[hole] = blocks[next];
+                hits[hole] = hits[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        size--;
+    }
+
+    /**
+     * the heap used by the index arrays, not counting the keys
+     */
+    long arrayBytes() {
+        return 3L * (16 + 4L * keys.length);
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldBlocks = blocks;
+        int[] oldHits = hits;
+        keys = new String[oldKeys.length * 2];
+        blocks = new int[keys.length];
+        hits = new int[keys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                hits[add(oldKeys[i], oldBlocks[i])] = oldHits[i];
+            }
+        }
+    }
+}
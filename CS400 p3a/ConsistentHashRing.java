@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable consistent hash ring of named nodes.
+ * 
+ * Every node is placed at virtualNodes points of a 64-bit ring, and a key
+ * belongs to the node at the first point at or after the key's hash (wrapping
+ * around). Adding a node only takes keys from the points in front of its own
+ * points, and removing one only hands its keys to the next points, so a change of
+ * nodes moves about 1 / nodes of the keys. The many virtual points per node even
+ * out the share each node gets.
+ * 
+ * The points are kept in a sorted array and searched with a binary search.
+ */
+final class ConsistentHashRing {
+    // seed of the ring hashes, different from the seeds the tables use
+    private static final long SEED = 0x5EED_0F_81_46L;
+
+    private final List<String> nodes;
+    private final int virtualNodes;
+    // the ring: sorted point hashes, and the index in nodes of each point's node
+    private final long[] points;
+    private final int[] owners;
+
+    ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.virtualNodes = virtualNodes;
+        int n = this.nodes.size() * virtualNodes;
+        // sort (hash, owner) pairs by hash
+        long[][] pairs = new long[n][];
+        for (int node = 0; node < this.nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                pairs[node * virtualNodes + v] = new long[] {
+                        KeyHash.hash(this.nodes.get(node) + "#" + v, SEED), node};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[n];
+        owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+    }
+
+    /**
+     * A ring with one more node
+     */
+    ConsistentHashRing with(String node) {
+        ArrayList<String> next = new ArrayList<>(nodes);
+        next.add(node);
+        return new ConsistentHashRing(next, virtualNodes);
+    }
+
+    /**
+     * A ring without a node
+     */
+    ConsistentHashRing without(String node) {
+        ArrayList<String> next = new ArrayList<>(nodes);
+        next.remove(node);
+        return new ConsistentHashRing(next, virtualNodes);
+    }
+
+    List<String> nodes() {
+        return nodes;
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * The node a key belongs to
+     * @throws IllegalStateException if the ring has no nodes
+     */
+    String owner(CharSequence key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("the ring has no nodes");
+        }
+        long h = KeyHash.hash(key, SEED);
+        int i = Arrays.binarySearch(points, h);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return nodes.get(owners[i == points.length ? 0 : i]);
+    }
+}
@@ -0,0 +1,221 @@
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A book table whose entries expire a given time after they were inserted, for
+ * short lived data such as prices and stock levels.
+ * 
+ * Every entry has a timer in a TimerWheel. get checks the deadline of the entry
+ * it finds, so an expired entry is never returned, and every operation first
+ * advances the wheel, which removes the entries that expired since the last one
+ * at O(1) cost each. numKeys therefore counts live entries only, and no
+ * operation ever sweeps the whole table. A table that sees no calls for a while
+ * can run startCleanup so that expired books do not stay referenced.
+ * 
+ * The methods are synchronized, so the cleanup thread can share the table with
+ * its users.
+ */
+public class ExpiringBookTable implements DataStructureADT<String, Book>, AutoCloseable {
+    // resolution of the timer wheel
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // a live entry, which is its own timer
+    private static final class Entry extends TimerWheel.Node {
+        final String key;
+        final Book book;
+
+        Entry(String key, Book book) {
+            this.key = key;
+            this.book = book;
+        }
+    }
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private final TimerWheel<Entry> wheel;
+    private final long defaultTtlNanos;
+    private final LongSupplier clock;
+    // the clock at construction; times are kept relative to it so they stay positive
+    private final long origin;
+    private long expired;
+    private ScheduledExecutorService cleaner;
+
+    /**
+     * @param defaultTtl how long an entry inserted with insert(key, value) lives
+     */
+    public ExpiringBookTable(long defaultTtl, TimeUnit unit) {
+        this(defaultTtl, unit, DEFAULT_TICK_NANOS, System::nanoTime);
+    }
+
+    /**
+     * @param tickNanos resolution of the timer wheel; timers still fire exactly,
+     * a coarser tick only means fewer, larger slots
+     * @param clock the time in nanoseconds, like System.nanoTime
+     */
+    ExpiringBookTable(long defaultTtl, TimeUnit unit, long tickNanos, LongSupplier clock) {
+        if (defaultTtl <= 0) {
+            throw new IllegalArgumentException("the time to live must be positive");
+        }
+        this.defaultTtlNanos = unit.toNanos(defaultTtl);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        this.wheel = new TimerWheel<>(tickNanos, 0);
+    }
+
+    /**
+     * Insert with the default time to live
+     */
+    @Override
+    public void insert(String key, Book value)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        insert(key, value, defaultTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Insert an entry that expires after ttl
+     * @throws DuplicateKeyException if the key has a live entry
+     */
+    public synchronized void insert(String key, Book value, long ttl, TimeUnit unit)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("the time to live must be positive");
+        }
+        long now = expireUntil();
+        if (entries.containsKey(key)) {
+            throw new DuplicateKeyException();
+        }
+        // toNanos saturates, so a long enough ttl would overflow the deadline
+        long ttlNanos = unit.toNanos(ttl);
+        long deadline = ttlNanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlNanos;
+        Entry entry = new Entry(key, value);
+        entries.put(key, entry);
+        wheel.schedule(entry, deadline);
+    }
+
+    /**
+     * Insert or replace an entry, restarting its time to live
+     */
+    public synchronized void put(String key, Book value, long ttl, TimeUnit unit)
+            throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        remove(key);
+        try {
+            insert(key, value, ttl, unit);
+        } catch (DuplicateKeyException e) {
+            throw new IllegalStateException("key still present after remove", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        expireUntil();
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        wheel.cancel(entry);
+        return true;
+    }
+
+    /**
+     * @throws KeyNotFoundException if the key is absent or its entry expired
+     */
+    @Override
+    public synchronized Book get(String key)
+            throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long now = clock.getAsLong() - origin;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            throw new KeyNotFoundException();
+        }
+        if (entry.deadline <= now) {
+            // expired, and the wheel did not get to it yet
+            entries.remove(key);
+            wheel.cancel(entry);
+            expired++;
+            throw new KeyNotFoundException();
+        }
+        return entry.book;
+    }
+
+    /**
+     * the time left before a key expires, 0 if it is absent or expired
+     */
+    public synchronized long remainingTtl(String key, TimeUnit unit) {
+        Entry entry = entries.get(key);
+        long left = entry == null ? 0 : entry.deadline - (clock.getAsLong() - origin);
+        return unit.convert(Math.max(0, left), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * the number of live entries
+     */
+    @Override
+    public synchronized int numKeys() {
+        expireUntil();
+        return entries.size();
+    }
+
+    /**
+     * the number of entries removed because they expired
+     */
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Remove the entries that expired, without any other operation
+     */
+    public synchronized void cleanUp() {
+        expireUntil();
+    }
+
+    /**
+     * Run cleanUp every period on a daemon thread, until close
+     */
+    public synchronized void startCleanup(long period, TimeUnit unit) {
+        if (cleaner != null) {
+            throw new IllegalStateException("cleanup already running");
+        }
+        cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiring-book-table-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleAtFixedRate(this::cleanUp, period, period, unit);
+    }
+
+    /**
+     * Stop the cleanup thread, if any
+     */
+    @Override
+    public synchronized void close() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+            cleaner = null;
+        }
+    }
+
+    // fire the timers due by now, and return now
+    private long expireUntil() {
+        long now = clock.getAsLong() - origin;
+        wheel.advance(now, entry -> {
+            entries.remove(entry.key);
+            expired++;
+        });
+        return now;
+    }
+}
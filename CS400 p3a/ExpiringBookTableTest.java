@@ -0,0 +1,176 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test expiry of ExpiringBookTable and its timer wheel, on a fake clock
+ */
+public class ExpiringBookTableTest {
+
+    static ArrayList<Book> books;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Check that get never returns an expired entry and numKeys counts live ones
+     */
+    @Test
+    public void test001_entries_expire() throws Exception {
+        AtomicLong now = new AtomicLong(-5_000);
+        ExpiringBookTable table = new ExpiringBookTable(100, TimeUnit.NANOSECONDS, 10,
+                now::get);
+        table.insert(books.get(0).getKey(), books.get(0));
+        table.insert(books.get(1).getKey(), books.get(1), 250, TimeUnit.NANOSECONDS);
+        assertEquals(2, table.numKeys());
+        now.addAndGet(99);
+        assertSame(books.get(0), table.get(books.get(0).getKey()));
+        assertEquals(1, table.remainingTtl(books.get(0).getKey(), TimeUnit.NANOSECONDS));
+        now.addAndGet(1);
+        try {
+            table.get(books.get(0).getKey());
+            fail("an expired entry should not be found");
+        } catch (KeyNotFoundException e) {
+            // expected
+        }
+        assertEquals(1, table.numKeys());
+        // the key can be used again once its entry expired
+        table.insert(books.get(0).getKey(), books.get(0));
+        try {
+            table.insert(books.get(0).getKey(), books.get(0));
+            fail("a live key should be rejected");
+        } catch (DuplicateKeyException e) {
+            // expected
+        }
+        now.addAndGet(120);
+        assertEquals(1, table.numKeys());
+        now.addAndGet(100);
+        assertEquals(0, table.numKeys());
+        assertEquals(3, table.getExpired());
+    }
+
+    /**
+     * Check that put restarts the time to live and remove cancels the timer
+     */
+    @Test
+    public void test002_put_and_remove() throws Exception {
+        AtomicLong now = new AtomicLong();
+        ExpiringBookTable table = new ExpiringBookTable(1, TimeUnit.SECONDS,
+                ExpiringBookTable.DEFAULT_TICK_NANOS, now::get);
+        String key = books.get(2).getKey();
+        table.insert(key, books.get(2));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(900));
+        table.put(key, books.get(3), 1, TimeUnit.SECONDS);
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(900));
+        assertSame(books.get(3), table.get(key));
+        assertTrue(table.remove(key));
+        assertFalse(table.remove(key));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, table.numKeys());
+        assertEquals(0, table.getExpired());
+    }
+
+    /**
+     * Check the wheel against a brute force scan, with deadlines spread over
+     * every level and beyond the range of the top one
+     */
+    @Test
+    public void test003_wheel_matches_brute_force() throws Exception {
+        final class Timer extends TimerWheel.Node {
+        }
+        Random random = new Random(7);
+        long range = 1L << (TimerWheel.LEVELS * TimerWheel.SLOT_BITS + 2);
+        TimerWheel<Timer> wheel = new TimerWheel<>(1, 0);
+        Map<Timer, Long> deadlines = new HashMap<>();
+        long now = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                Timer timer = new Timer();
+                // mostly near, some far, some already due
+                long delay = random.nextInt(4) == 0 ? (long) (random.nextDouble() * range)
+                        : random.nextInt(5000) - 10;
+                wheel.schedule(timer, now + delay);
+                deadlines.put(timer, now + delay);
+            }
+            // cancel a few
+            for (Timer timer : new ArrayList<>(deadlines.keySet()).subList(0, 5)) {
+                wheel.cancel(timer);
+                deadlines.remove(timer);
+            }
+            now += random.nextInt(4) == 0 ? range / 50 : random.nextInt(3000);
+            final long at = now;
+            wheel.advance(now, timer -> {
+                Long deadline = deadlines.remove(timer);
+                assertTrue(deadline != null && deadline <= at, "fired early or twice");
+            });
+            for (long deadline : deadlines.values()) {
+                assertTrue(deadline > now, "a due timer did not fire");
+            }
+            assertEquals(deadlines.size(), wheel.size());
+        }
+    }
+
+    /**
+     * Check that the wheel skips idle ticks: a timer far beyond the range of the
+     * top level, on a one nanosecond tick, fires exactly at its deadline without
+     * the wheel stepping through every tick on the way
+     */
+    @Test
+    public void test004_idle_ticks_are_skipped() throws Exception {
+        final class Timer extends TimerWheel.Node {
+        }
+        TimerWheel<Timer> wheel = new TimerWheel<>(1, 0);
+        Timer near = new Timer();
+        Timer far = new Timer();
+        long deadline = 1L << 40;
+        wheel.schedule(near, 1000);
+        wheel.schedule(far, deadline);
+        ArrayList<Timer> fired = new ArrayList<>();
+        wheel.advance(deadline / 3, fired::add);
+        assertEquals(1, fired.size());
+        assertSame(near, fired.get(0));
+        wheel.advance(deadline - 1, fired::add);
+        assertEquals(1, fired.size());
+        wheel.advance(deadline, fired::add);
+        assertEquals(2, fired.size());
+        assertSame(far, fired.get(1));
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Check that a time to live too long to add to the clock never expires
+     * instead of overflowing into the past
+     */
+    @Test
+    public void test005_huge_ttl_does_not_overflow() throws Exception {
+        AtomicLong now = new AtomicLong(1_000);
+        ExpiringBookTable table = new ExpiringBookTable(100, TimeUnit.NANOSECONDS, 10,
+                now::get);
+        now.addAndGet(5_000);
+        table.insert(books.get(0).getKey(), books.get(0), 400_000, TimeUnit.DAYS);
+        table.insert(books.get(1).getKey(), books.get(1), Long.MAX_VALUE - 1,
+                TimeUnit.NANOSECONDS);
+        table.insert(books.get(2).getKey(), books.get(2), Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        assertEquals(3, table.numKeys());
+        now.addAndGet(TimeUnit.DAYS.toNanos(365 * 100));
+        for (int i = 0; i < 3; i++) {
+            assertSame(books.get(i), table.get(books.get(i).getKey()));
+        }
+        assertEquals(3, table.numKeys());
+        assertTrue(table.remainingTtl(books.get(0).getKey(), TimeUnit.DAYS) > 365 * 100);
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts any number of books in bounded memory (external merge sort).
+ * 
+ * Books are added one at a time and buffered until their estimated size reaches
+ * the memory budget. Then the buffer is sorted and written to a run file in the
+ * spill directory, in books.csv format. finish merges the runs, at most
+ * MAX_FAN_IN at once (more runs are first merged in passes into longer runs),
+ * and writes the sorted books in books.csv format. When everything fit in the
+ * budget no file is written at all.
+ * 
+ * Only one row per run is held during the merge, so the heap used is about the
+ * memory budget whatever the number of books. The run files are deleted by
+ * finish, or by close if the sort is abandoned.
+ */
+public class ExternalBookSorter implements AutoCloseable {
+    /** by ISBN, as strings */
+    public static final Comparator<Book> BY_ISBN = Comparator.comparing(Book::getKey);
+    /** by average rating, lowest first, unreadable ratings last, ties by ISBN */
+    public static final Comparator<Book> BY_AVERAGE_RATING =
+            Comparator.comparingDouble(ExternalBookSorter::rating).thenComparing(BY_ISBN);
+    /** by average rating, highest first, unreadable ratings last, ties by ISBN */
+    public static final Comparator<Book> BEST_RATED_FIRST =
+            Comparator.comparingDouble(ExternalBookSorter::rank).reversed()
+                    .thenComparing(BY_ISBN);
+
+    // most runs merged at once, which bounds the open files and read buffers
+    static final int MAX_FAN_IN = 64;
+
+    // a run being merged, positioned on its next row
+    private static final class RunReader {
+        final BufferedReader reader;
+        final int index;
+        String row;
+        Book book;
+
+        RunReader(Path file, int index) throws IOException {
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.index = index;
+        }
+
+        boolean advance() throws IOException {
+            row = reader.readLine();
+            book = row == null ? null : BookParser.parseLine(row);
+            return row != null;
+        }
+    }
+
+    private final Comparator<Book> order;
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final ArrayList<Book> buffer = new ArrayList<>();
+    private long bufferedBytes;
+    private final ArrayList<Path> runs = new ArrayList<>();
+    private long spilledBytes;
+    private int totalRuns;
+    private boolean finished;
+
+    /**
+     * @param order the order of the output
+     * @param memoryBudget the estimated bytes of books to buffer before spilling
+     * @param spillDirectory where the run files go
+     */
+    public ExternalBookSorter(Comparator<Book> order, long memoryBudget, Path spillDirectory) {
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("the memory budget must be positive");
+        }
+        this.order = order;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    static double rating(Book book) {
+        try {
+            return Double.parseDouble(book.getAverageRating());
+        } catch (NumberFormatException | NullPointerException e) {
+            return Double.NaN;
+        }
+    }
+
+    // the rating with unreadable ones below every number, NaN would sort above
+    private static double rank(Book book) {
+        double rating = rating(book);
+        return Double.isNaN(rating) ? Double.NEGATIVE_INFINITY : rating;
+    }
+
+    /**
+     * Add a book, spilling a run if the buffer is over budget
+     */
+    public void add(Book book) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("the sort is finished");
+        }
+        buffer.add(book);
+        // the book and its slot in the buffer
+        bufferedBytes += HeapSize.bookBytes(book) + 4;
+        if (bufferedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * the number of run files written so far, including merge passes
+     */
+    public int getRuns() {
+        return totalRuns;
+    }
+
+    /**
+     * the bytes written to run files so far
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * Write every book added, in order, with the books.csv header first
+     * @return the number of books written
+     */
+    public long finish(Writer out) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("the sort is finished");
+        }
+        finished = true;
+        out.write(BookParser.HEADER);
+        out.write('\n');
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            for (Book book : buffer) {
+                out.write(BookParser.format(book));
+                out.write('\n');
+            }
+            long n = buffer.size();
+            buffer.clear();
+            return n;
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        // merge in passes until one merge can take every run
+        while (runs.size() > MAX_FAN_IN) {
+            ArrayList<Path> next = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+                    int to = Math.min(runs.size(), from + MAX_FAN_IN);
+                    if (to - from == 1) {
+                        next.add(runs.get(from));
+                        continue;
+                    }
+                    Path merged = newRun();
+                    next.add(merged);
+                    try (Writer run = Files.newBufferedWriter(merged, StandardCharsets.UTF_8)) {
+                        merge(runs.subList(from, to), run);
+                    }
+                    spilledBytes += Files.size(merged);
+                    for (Path used : runs.subList(from, to)) {
+                        Files.delete(used);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // the outputs of this pass are not in runs yet, close() would miss them
+                for (Path run : next) {
+                    try {
+                        Files.deleteIfExists(run);
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(next);
+        }
+        long n = merge(runs, out);
+        close();
+        return n;
+    }
+
+    /**
+     * Delete the run files left
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private Path newRun() throws IOException {
+        totalRuns++;
+        return Files.createTempFile(spillDirectory, "books-run-", ".csv");
+    }
+
+    // sort the buffer into a new run file
+    private void spill() throws IOException {
+        buffer.sort(order);
+        Path run = newRun();
+        runs.add(run);
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (Book book : buffer) {
+                writer.write(BookParser.format(book));
+                writer.write('\n');
+            }
+        }
+        spilledBytes += Files.size(run);
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    // k-way merge of sorted runs; rows are copied as read, ties go to the earlier run
+    private long merge(List<Path> inputs, Writer out) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<>(inputs.size(),
+                (a, b) -> {
+                    int c = order.compare(a.book, b.book);
+                    return c != 0 ? c : Integer.compare(a.index, b.index);
+                });
+        ArrayList<RunReader> readers = new ArrayList<>();
+        long n = 0;
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                RunReader reader = new RunReader(inputs.get(i), i);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader smallest = heads.poll();
+                out.write(smallest.row);
+                out.write('\n');
+                n++;
+                if (smallest.advance()) {
+                    heads.add(smallest);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.reader.close();
+            }
+        }
+        return n;
+    }
+}
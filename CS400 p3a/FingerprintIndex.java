@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+
+/**
+ * Remembers, for every ISBN of a catalogue, a 64-bit fingerprint of its CSV row
+ * and the reload generation in which the row was last seen. Used by
+ * CatalogueReloader to tell unchanged rows from changed ones.
+ * 
+ * Linear probing over parallel arrays, kept at most half full. Keys can be
+ * looked up straight from a byte range so unchanged rows allocate nothing.
+ * Removal shifts the following entries back instead of leaving tombstones.
+ */
+final class FingerprintIndex {
+    private String[] keys = new String[16];
+    private long[] fingerprints = new long[16];
+    private int[] generations = new int[16];
+    private int size;
+
+    private static int slotFor(int stringHash, int length) {
+        return (int) KeyHash.mix(stringHash) & (length - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the key given as Latin-1 bytes, -1 if absent
+     */
+    int indexOf(byte[] key, int offset, int length) {
+        int mask = keys.length - 1;
+        for (int slot = slotFor(KeyHash.stringHashCode(key, offset, length), keys.length);
+                keys[slot] != null; slot = (slot + 1) & mask) {
+            if (KeyHash.contentEquals(keys[slot], key, offset, length)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    long fingerprint(int slot) {
+        return fingerprints[slot];
+    }
+
+    /**
+     * Update the fingerprint of an existing slot and mark it seen
+     */
+    void update(int slot, long fingerprint, int generation) {
+        fingerprints[slot] = fingerprint;
+        generations[slot] = generation;
+    }
+
+    /**
+     * Mark an existing slot seen in this generation
+     */
+    void touch(int slot, int generation) {
+        generations[slot] = generation;
+    }
+
+    /**
+     * Add a key that is not in the index yet
+     */
+    void add(String key, long fingerprint, int generation) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = slotFor(key.hashCode(), keys.length);
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        fingerprints[slot] = fingerprint;
+        generations[slot] = generation;
+        size++;
+    }
+
+    /**
+     * Remove every key that was not seen in the given generation
+     * @return the removed keys
+     */
+    ArrayList<String> removeUnseen(int generation) {
+        ArrayList<String> stale = new ArrayList<>();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null && generations[slot] != generation) {
+                stale.add(keys[slot]);
+            }
+        }
+        for (String key : stale) {
+            remove(key);
+        }
+        return stale;
+    }
+
+    private void remove(String key) {
+        int mask = keys.length - 1;
+        int slot = slotFor(key.hashCode(), keys.length);
+        while (!key.equals(keys[slot])) {
+            slot = (slot + 1) & mask;
+        }
+        // shift back every following entry that would no longer be reachable
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = slotFor(keys[next].hashCode(), keys.length);
+            // move the entry if its home is not between the hole and its slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                fingerprints[hole] = fingerprints[next];
+                generations[hole] = generations[next];
+                hole = next;
+            }
+        }
+        keys[hole] = null;
+        size--;
+    }
+
+    private void grow() {
+        String[] oldKeys = keys;
+        long[] oldFingerprints = fingerprints;
+        int[] oldGenerations = generations;
+        keys = new String[oldKeys.length * 2];
+        fingerprints = new long[keys.length];
+        generations = new int[keys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                add(oldKeys[i], oldFingerprints[i], oldGenerations[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Algorithm Explanations:
+ * 
+ * An immutable, read-only table built once over a fixed set of books using a
+ * minimal perfect hash function in the style of CHD (compress, hash, displace).
+ * 
+ * Every key is hashed once to 64 bits. The high half picks one of roughly
+ * n / LAMBDA buckets. Buckets are then processed from the largest to the
+ * smallest, and for each one we search for the first displacement d such that
+ * mixing every key's hash with d sends all of the bucket's keys to distinct,
+ * still free slots of an array with exactly n slots. Only d is stored per
+ * bucket, so the hash function itself costs about one int per LAMBDA keys.
+ * 
+ * Next to each slot we keep a 16-bit fingerprint taken from the low bits of the
+ * key's hash. A lookup computes the hash, reads one displacement, lands on exactly
+ * one slot and compares fingerprints; only when they match does it compare the
+ * actual key. A hit therefore costs one probe, and almost every miss is rejected
+ * by the fingerprint without touching the book.
+ * 
+ * The table implements the read side of HashTableADT; insert and remove throw
+ * UnsupportedOperationException.
+ */
+public class FrozenBookHashTable implements ScannableBookTable {
+    // average number of keys per bucket of the hash function
+    static final int LAMBDA = 4;
+    // how many global seeds to try before giving up on a key set
+    static final int MAX_SEEDS = 32;
+    // how many displacements to try for one bucket before switching seeds
+    static final int MAX_DISPLACEMENT = 1 << 24;
+
+    // the seed the hash function was successfully built with
+    private final long seed;
+    // one displacement per bucket
+    private final int[] displacements;
+    // the fingerprint of the key stored in each slot
+    private final short[] fingerprints;
+    // the book stored in each slot
+    private final Book[] books;
+
+    /**
+     * Build a frozen table over the given books
+     * @param books the books to store, keyed by getKey()
+     * @throws IllegalNullKeyException if a book has a null key
+     * @throws DuplicateKeyException if two books share a key
+     */
+    public FrozenBookHashTable(Collection<Book> books)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        Book[] input = books.toArray(new Book[0]);
+        for (Book book : input) {
+            if (book.getKey() == null) {
+                throw new IllegalNullKeyException();
+            }
+        }
+        int n = input.length;
+        int numBuckets = Math.max(1, (n + LAMBDA - 1) / LAMBDA);
+        long[] hashes = new long[n];
+        int[] slots = null;
+        int[] chosen = new int[numBuckets];
+        long usedSeed = 0;
+        for (int attempt = 0; attempt < MAX_SEEDS && slots == null; attempt++) {
+            usedSeed = KeyHash.mix(attempt + 1);
+            for (int i = 0; i < n; i++) {
+                hashes[i] = KeyHash.hash(input[i].getKey(), usedSeed);
+            }
+            slots = place(input, hashes, numBuckets, chosen);
+        }
+        if (slots == null) {
+            // practically unreachable: every seed produced a full 64-bit collision
+            throw new IllegalStateException("could not build a perfect hash for " + n + " keys");
+        }
+        this.seed = usedSeed;
+        this.displacements = chosen;
+        this.fingerprints = new short[n];
+        this.books = new Book[n];
+        for (int i = 0; i < n; i++) {
+            this.books[slots[i]] = input[i];
+            this.fingerprints[slots[i]] = fingerprint(hashes[i]);
+        }
+    }
+
+    /**
+     * Try to find a displacement for every bucket under the current hashes
+     * @return the slot of every key, or null if this seed does not work
+     * @throws DuplicateKeyException if two keys are equal
+     */
+    private static int[] place(Book[] input, long[] hashes, int numBuckets, int[] chosen)
+            throws DuplicateKeyException {
+        int n = input.length;
+        // counting sort the keys by bucket
+        int[] bucketStart = new int[numBuckets + 1];
+        for (int i = 0; i < n; i++) {
+            bucketStart[bucketOf(hashes[i], numBuckets) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStart[b + 1]);
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] members = new int[n];
+        int[] fill = bucketStart.clone();
+        for (int i = 0; i < n; i++) {
+            members[fill[bucketOf(hashes[i], numBuckets)]++] = i;
+        }
+        // order the buckets from the largest to the smallest, again by counting sort
+        ArrayList<ArrayList<Integer>> bySize = new ArrayList<>();
+        for (int size = 0; size <= maxBucketSize; size++) {
+            bySize.add(new ArrayList<>());
+        }
+        for (int b = 0; b < numBuckets; b++) {
+            bySize.get(bucketStart[b + 1] - bucketStart[b]).add(b);
+        }
+
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[n];
+        int[] candidate = new int[maxBucketSize];
+        for (int size = maxBucketSize; size > 0; size--) {
+            for (int b : bySize.get(size)) {
+                int from = bucketStart[b];
+                // keys with the same 64-bit hash can never be separated
+                for (int x = 0; x < size; x++) {
+                    for (int y = x + 1; y < size; y++) {
+                        int i = members[from + x];
+                        int j = members[from + y];
+                        if (hashes[i] == hashes[j]) {
+                            if (input[i].getKey().equals(input[j].getKey())) {
+                                throw new DuplicateKeyException();
+                            }
+                            return null;
+                        }
+                    }
+                }
+                int d = 0;
+                for (; d < MAX_DISPLACEMENT; d++) {
+                    if (fits(members, from, size, hashes, d, n, taken, candidate)) {
+                        break;
+                    }
+                }
+                if (d == MAX_DISPLACEMENT) {
+                    return null;
+                }
+                chosen[b] = d;
+                for (int x = 0; x < size; x++) {
+                    taken[candidate[x]] = true;
+                    slots[members[from + x]] = candidate[x];
+                }
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Check whether displacement d sends every key of a bucket to distinct free
+     * slots, leaving those slots in candidate
+     */
+    private static boolean fits(int[] members, int from, int size, long[] hashes, int d,
+            int n, boolean[] taken, int[] candidate) {
+        for (int x = 0; x < size; x++) {
+            int slot = slotOf(hashes[members[from + x]], d, n);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int y = 0; y < x; y++) {
+                if (candidate[y] == slot) {
+                    return false;
+                }
+            }
+            candidate[x] = slot;
+        }
+        return true;
+    }
+
+    private static int bucketOf(long hash, int numBuckets) {
+        return KeyHash.reduce(hash >>> 32, numBuckets);
+    }
+
+    private static int slotOf(long hash, int displacement, int n) {
+        return KeyHash.reduce(KeyHash.mix(hash + displacement * 0x9E3779B97F4A7C15L) >>> 32, n);
+    }
+
+    private static short fingerprint(long hash) {
+        return (short) hash;
+    }
+
+    /**
+     * Returns the value associated with the specified key, looking at exactly
+     * one slot.
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, throw KeyNotFoundException().
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        int n = books.length;
+        if (n == 0) {
+            throw new KeyNotFoundException();
+        }
+        long h = KeyHash.hash(key, seed);
+        int slot = slotOf(h, displacements[bucketOf(h, displacements.length)], n);
+        // most misses stop here without reading the book
+        if (fingerprints[slot] != fingerprint(h) || !key.equals(books[slot].getKey())) {
+            throw new KeyNotFoundException();
+        }
+        return books[slot];
+    }
+
+    /**
+     * Look up a key given as any CharSequence without building a String; a miss
+     * returns null instead of throwing, so nothing is allocated
+     * @return the book stored under that key, null if there is none
+     * @throws IllegalNullKeyException if key is null
+     */
+    @Override
+    public Book lookup(CharSequence key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (books.length == 0) {
+            return null;
+        }
+        long h = KeyHash.hash(key, seed);
+        int slot = slotOf(h, displacements[bucketOf(h, displacements.length)], books.length);
+        if (fingerprints[slot] != fingerprint(h) || !books[slot].getKey().contentEquals(key)) {
+            return null;
+        }
+        return books[slot];
+    }
+
+    /**
+     * Look up a key given as a range of bytes, each read as one Latin-1 char,
+     * without decoding it; a miss returns null
+     * @return the book stored under that key, null if there is none
+     * @throws IllegalNullKeyException if key is null
+     */
+    public Book lookup(byte[] key, int offset, int length) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (books.length == 0) {
+            return null;
+        }
+        long h = KeyHash.hash(key, offset, length, seed);
+        int slot = slotOf(h, displacements[bucketOf(h, displacements.length)], books.length);
+        if (fingerprints[slot] != fingerprint(h)
+                || !KeyHash.contentEquals(books[slot].getKey(), key, offset, length)) {
+            return null;
+        }
+        return books[slot];
+    }
+
+    /**
+     * return the number of slots, every one of them is full
+     */
+    @Override
+    public int bucketCount() {
+        return books.length;
+    }
+
+    /**
+     * Pass the books of slots fromBucket to toBucket - 1 to action
+     */
+    @Override
+    public void scanBuckets(int fromBucket, int toBucket, Consumer<Book> action) {
+        for (int i = fromBucket; i < toBucket; i++) {
+            action.accept(books[i]);
+        }
+    }
+
+    /**
+     * Frozen tables cannot change
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void insert(String key, Book value) {
+        throw new UnsupportedOperationException("frozen table is read-only");
+    }
+
+    /**
+     * Frozen tables cannot change
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(String key) {
+        throw new UnsupportedOperationException("frozen table is read-only");
+    }
+
+    /**
+     * return the number of keys in the table
+     */
+    @Override
+    public int numKeys() {
+        return books.length;
+    }
+
+    /**
+     * A minimal perfect hash table is always exactly full
+     */
+    @Override
+    public double getLoadFactorThreshold() {
+        return 1.0;
+    }
+
+    /**
+     * return the number of slots, which equals the number of keys
+     */
+    @Override
+    public int getCapacity() {
+        return books.length;
+    }
+
+    /**
+     * Returns the collision resolution scheme used for this hash table.
+     * 10 PERFECT HASH: displaced buckets (CHD), no collisions
+     */
+    @Override
+    public int getCollisionResolutionScheme() {
+        return 10;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the read-only perfectly hashed snapshot
+ */
+public class FrozenBookHashTableTest {
+
+    static ArrayList<Book> bookTable;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Freeze the whole catalogue and check every key is found and absent keys are not
+     */
+    @Test
+    public void test000_freeze_finds_every_key() throws Exception {
+        BookHashTable table = new BookHashTable();
+        for (Book book : bookTable) {
+            table.insert(book.getKey(), book);
+        }
+        FrozenBookHashTable frozen = table.freeze();
+        assertEquals(bookTable.size(), frozen.numKeys());
+        assertEquals(bookTable.size(), frozen.getCapacity());
+        for (Book book : bookTable) {
+            assertEquals(book, frozen.get(book.getKey()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            try {
+                frozen.get("missing-" + i);
+                fail("KeyNotFoundException is not thrown");
+            }
+            catch(KeyNotFoundException e) {
+            }
+        }
+    }
+
+    /**
+     * Mutations throw, null keys and duplicate keys are rejected
+     */
+    @Test
+    public void test001_read_only_and_rejects_bad_input() throws Exception {
+        ArrayList<Book> books = new ArrayList<>(bookTable.subList(0, 10));
+        FrozenBookHashTable frozen = new FrozenBookHashTable(books);
+        try {
+            frozen.insert(bookTable.get(20).getKey(), bookTable.get(20));
+            fail("UnsupportedOperationException is not thrown");
+        }
+        catch(UnsupportedOperationException e) {
+        }
+        try {
+            frozen.get(null);
+            fail("IllegalNullKeyException is not thrown");
+        }
+        catch(IllegalNullKeyException e) {
+        }
+        books.add(bookTable.get(3));
+        try {
+            new FrozenBookHashTable(books);
+            fail("DuplicateKeyException is not thrown");
+        }
+        catch(DuplicateKeyException e) {
+        }
+        assertEquals(0, new FrozenBookHashTable(new ArrayList<>()).numKeys());
+    }
+}
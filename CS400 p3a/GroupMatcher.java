@@ -0,0 +1,28 @@
+/**
+ * Finds slots inside one 16-slot group of a SwissBookHashTable control array.
+ * 
+ * Every method returns a 16-bit mask where bit i is set when slot offset + i
+ * matches. Two implementations exist: SwarGroupMatcher tests eight bytes at a
+ * time with plain long arithmetic and is the default, and VectorGroupMatcher
+ * compares all 16 control bytes in one step through jdk.incubator.vector.
+ */
+interface GroupMatcher {
+    // number of slots per group
+    int GROUP_SIZE = 16;
+
+    /**
+     * Slots whose control byte equals the 7-bit hash fragment h2. May report a
+     * few extra slots, which the caller rules out by comparing keys.
+     */
+    int match(byte[] ctrl, int offset, byte h2);
+
+    /**
+     * Slots that are EMPTY, exactly
+     */
+    int matchEmpty(byte[] ctrl, int offset);
+
+    /**
+     * Slots that are EMPTY or DELETED, exactly
+     */
+    int matchEmptyOrDeleted(byte[] ctrl, int offset);
+}
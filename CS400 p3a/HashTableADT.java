@@ -50,6 +50,8 @@ public interface HashTableADT<K extends Comparable<K>, V> extends DataStructureA
       // 7 CHAINED BUCKET: linked list of array lists
       // 8 CHAINED BUCKET: linked list of linked lists
       // 9 CHAINED BUCKET: linked list of of binary search trees
+      // 10 PERFECT HASH: displaced buckets (CHD), read-only, no collisions
+      // 11 OPEN ADDRESSING: SwissTable group probe (16 control bytes per group)
      public int getCollisionResolutionScheme() ;
 
 }
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+
+/**
+ * A quick throughput comparison of the hash table implementations on the keys
+ * of books.csv.
+ * 
+ * For each load factor threshold, every table is sized so the whole catalogue
+ * fits right below that threshold, filled, and then timed on repeated rounds of
+ * lookups for keys that are present and keys that are not. Everything runs once
+ * to warm up the JIT, then again for the printed results, and the best round of
+ * each measurement is reported. Run it with:
+ * 
+ *   java --add-modules jdk.incubator.vector HashTableBenchmark [books.csv]
+ */
+public class HashTableBenchmark {
+    // rounds per measurement, the fastest one is reported
+    static final int ROUNDS = 15;
+
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "books.csv";
+        ArrayList<Book> books = BookParser.parse(file);
+        String[] hits = new String[books.size()];
+        String[] misses = new String[books.size()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = books.get(i).getKey();
+            misses[i] = "978" + i + ".5";
+        }
+        System.out.println(books.size() + " keys from " + file);
+        // the first pass only warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            boolean print = pass == 1;
+            if (print) {
+                System.out.printf("%-24s %6s %6s %10s %12s %12s%n", "table", "LFT", "load",
+                        "capacity", "hit ns/op", "miss ns/op");
+            }
+            for (double threshold : new double[] {0.75, 0.875, 0.95}) {
+                // sized so the whole catalogue fits without a resize, which puts
+                // the load factor right below the threshold
+                int capacity = (int) Math.ceil(books.size() / threshold) + 1;
+                report("BookHashTable (5)", new BookHashTable(capacity, threshold), books, hits,
+                        misses, print);
+                report("Swiss SWAR (11)",
+                        new SwissBookHashTable(capacity, threshold, new SwarGroupMatcher()),
+                        books, hits, misses, print);
+                if (SwissBookHashTable.VECTOR_MATCHER != null) {
+                    report("Swiss Vector API (11)", new SwissBookHashTable(capacity, threshold,
+                            SwissBookHashTable.VECTOR_MATCHER), books, hits, misses, print);
+                }
+            }
+        }
+        System.out.println("miss times include throwing KeyNotFoundException");
+    }
+
+    private static void report(String name, HashTableADT<String, Book> table,
+            ArrayList<Book> books, String[] hits, String[] misses, boolean print)
+            throws Exception {
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        double hit = bestNanosPerOp(table, hits, true);
+        double miss = bestNanosPerOp(table, misses, false);
+        if (print) {
+            System.out.printf("%-24s %6.3f %6.3f %10d %12.1f %12.1f%n", name,
+                    table.getLoadFactorThreshold(),
+                    (double) table.numKeys() / table.getCapacity(), table.getCapacity(), hit,
+                    miss);
+        }
+    }
+
+    private static double bestNanosPerOp(HashTableADT<String, Book> table, String[] keys,
+            boolean present) throws IllegalNullKeyException {
+        long best = Long.MAX_VALUE;
+        long found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String key : keys) {
+                try {
+                    found += table.get(key) == null ? 0 : 1;
+                } catch (KeyNotFoundException e) {
+                    found--;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        // use the result so the loop cannot be optimized away
+        if (found == Long.MIN_VALUE || (present && found < 0)) {
+            System.out.println(found);
+        }
+        return (double) best / keys.length;
+    }
+}
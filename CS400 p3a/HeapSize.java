@@ -0,0 +1,34 @@
+/**
+ * Rough heap sizes of books and strings, for memory budgets and reports. The
+ * estimates assume compressed oops and Latin-1 strings.
+ */
+final class HeapSize {
+
+    private HeapSize() {
+    }
+
+    /**
+     * Estimated heap of a String with Latin-1 contents and compressed oops
+     */
+    static long stringBytes(String s) {
+        return s == null ? 0 : 24 + align(16 + s.length());
+    }
+
+    /**
+     * Estimated heap of a Book and its eight strings
+     */
+    static long bookBytes(Book book) {
+        return 48 + stringBytes(book.getKey()) + stringBytes(book.getAuthors())
+                + stringBytes(book.getOriginalPublicationYear())
+                + stringBytes(book.getTitle()) + stringBytes(book.getLanguageCode())
+                + stringBytes(book.getAverageRating()) + stringBytes(book.getCoverType())
+                + stringBytes(book.getPages());
+    }
+
+    /**
+     * round a size up to the 8 byte object alignment
+     */
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * 64-bit key hashing shared by the tables and filters that need more than the
+ * 32 bits of String.hashCode().
+ */
+final class KeyHash {
+
+    private KeyHash() {
+    }
+
+    /**
+     * 64-bit hash of a key: FNV-1a over the chars followed by a final mix
+     * @param key the key to hash
+     * @param seed selects one member of the hash family
+     */
+    static long hash(CharSequence key, long seed) {
+        long h = 0xCBF29CE484222325L ^ seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The same hash as hash(CharSequence, long) for a key given as bytes, reading
+     * each byte as one Latin-1 char (which covers ASCII keys such as ISBNs)
+     */
+    static long hash(byte[] key, int offset, int length, long seed) {
+        long h = 0xCBF29CE484222325L ^ seed;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ (key[i] & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * The value String.hashCode() would return for these chars, without building
+     * the String; a String argument uses its cached hash
+     */
+    static int stringHashCode(CharSequence key) {
+        if (key instanceof String) {
+            return key.hashCode();
+        }
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * The value String.hashCode() would return for the Latin-1 decoding of these bytes
+     */
+    static int stringHashCode(byte[] key, int offset, int length) {
+        int h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + (key[i] & 0xFF);
+        }
+        return h;
+    }
+
+    /**
+     * Compare a stored key with a byte range read as Latin-1, without decoding it
+     */
+    static boolean contentEquals(String stored, byte[] key, int offset, int length) {
+        if (stored.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (stored.charAt(i) != (key[offset + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, spreads every input bit over the output
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Map 32 hash bits onto [0, range) with a multiply instead of a division
+     */
+    static int reduce(long bits32, int range) {
+        return (int) (((bits32 & 0xFFFFFFFFL) * range) >>> 32);
+    }
+}
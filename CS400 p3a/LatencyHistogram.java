@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small HDR-style latency histogram.
+ * 
+ * Values (in nanoseconds) are grouped into log-linear buckets: each power of two
+ * is split into SUB_BUCKETS equal slices, so the relative error of any recorded
+ * value is at most 1 / SUB_BUCKETS no matter how large the value is. Recording is
+ * a single atomic increment, which keeps the cost low enough to sit on the hot path
+ * of insert/get/remove.
+ */
+public class LatencyHistogram {
+    // number of linear slices per power of two (must be a power of two)
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // one row of sub buckets for each possible magnitude of a long
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // the count of values recorded in each bucket
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    // total number of values and their sum, used for the mean
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    // largest value seen so far
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Record one latency sample
+     * @param nanos the measured duration, negative values are treated as 0
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Map a value to its bucket. Values smaller than SUB_BUCKETS get an exact bucket,
+     * bigger values use their highest SUB_BUCKET_BITS + 1 bits.
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+        return (magnitude + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The highest value that falls into the given bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+
+    /**
+     * return the number of recorded samples
+     */
+    public long count() {
+        return totalCount.sum();
+    }
+
+    /**
+     * return the mean of all recorded samples in nanoseconds, 0 if empty
+     */
+    public double mean() {
+        long n = totalCount.sum();
+        return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * return the largest recorded sample in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given percentage of samples fall.
+     * The result is the upper bound of the matching bucket, so it is never an
+     * under-estimate.
+     * @param percentile a number between 0 and 100
+     */
+    public long percentile(double percentile) {
+        long n = totalCount.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        if (target == 0) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clear every recorded sample
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalNanos.reset();
+        max.reset();
+    }
+}
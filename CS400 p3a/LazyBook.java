@@ -0,0 +1,130 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Book that keeps only the position of its CSV row inside a shared buffer
+ * (normally the memory-mapped books.csv, see LazyBookParser) instead of eight
+ * Strings.
+ * 
+ * The field boundaries are found the first time any field is read. The key is
+ * decoded once and kept, since the hash table compares it on every lookup; every
+ * other field is decoded from the buffer each time its getter is called and is
+ * not kept, so a book that is only looked up never costs more than its key.
+ */
+public class LazyBook extends Book {
+    // number of comma separated fields in a row
+    static final int FIELDS = 8;
+
+    // the buffer shared by every book of the same file
+    private final ByteBuffer buffer;
+    // where this book's row starts in the buffer and how long it is
+    private final int offset;
+    private final int length;
+    // start of each field relative to offset, plus the end of the row;
+    // computed on first access
+    private volatile int[] bounds;
+    // the decoded key, or the key set through setKey
+    private String key;
+
+    /**
+     * @param buffer the buffer holding the row, not modified
+     * @param offset where the row starts, after any previous line break
+     * @param length the length of the row without its line break
+     */
+    public LazyBook(ByteBuffer buffer, int offset, int length) {
+        super(null, null, null, null, null, null, null, null);
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Find the commas of the row once
+     */
+    private int[] bounds() {
+        int[] found = bounds;
+        if (found == null) {
+            found = new int[FIELDS + 1];
+            int field = 1;
+            for (int i = 0; i < length && field < FIELDS; i++) {
+                if (buffer.get(offset + i) == ',') {
+                    found[field++] = i + 1;
+                }
+            }
+            // a short row leaves its missing fields empty
+            while (field <= FIELDS) {
+                found[field++] = length + 1;
+            }
+            bounds = found;
+        }
+        return found;
+    }
+
+    /**
+     * Decode one field from the buffer
+     * @param index the position of the field in the row, 0 for the key
+     */
+    String field(int index) {
+        int[] b = bounds();
+        int start = b[index];
+        int end = Math.min(b[index + 1] - 1, length);
+        if (end <= start) {
+            return "";
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(offset + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getKey() {
+        String cached = key;
+        if (cached == null) {
+            cached = field(0);
+            key = cached;
+        }
+        return cached;
+    }
+
+    @Override
+    public void setKey(String isbn13) {
+        this.key = isbn13;
+    }
+
+    @Override
+    public String getAuthors() {
+        return field(1);
+    }
+
+    @Override
+    public String getOriginalPublicationYear() {
+        return field(2);
+    }
+
+    @Override
+    public String getTitle() {
+        return field(3);
+    }
+
+    @Override
+    public String getLanguageCode() {
+        return field(4);
+    }
+
+    @Override
+    public String getAverageRating() {
+        return field(5);
+    }
+
+    @Override
+    public String getCoverType() {
+        return field(6);
+    }
+
+    @Override
+    public String getPages() {
+        return field(7);
+    }
+}
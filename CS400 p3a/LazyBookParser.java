@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Parse a books csv file into LazyBook objects that point into the memory-mapped
+ * file instead of copying its fields into Strings. Only the line breaks are
+ * searched at load time; the file stays mapped for as long as any of the books
+ * is reachable.
+ */
+public class LazyBookParser {
+
+    // @param booksfilename - a csv file with book database information, at most 2GB
+    // @return one LazyBook per data row, the header row is skipped
+    public static ArrayList<Book> parse(String booksfilename) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(booksfilename),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(buffer);
+    }
+
+    // @param buffer - the contents of a books csv file, from position 0 to its limit
+    public static ArrayList<Book> parse(ByteBuffer buffer) {
+        ArrayList<Book> bookList = new ArrayList<Book>();
+        int limit = buffer.limit();
+        int start = 0;
+        boolean header = true;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            int rowEnd = end;
+            if (rowEnd > start && buffer.get(rowEnd - 1) == '\r') {
+                rowEnd--;
+            }
+            if (header) {
+                header = false;
+            } else if (rowEnd > start) {
+                bookList.add(new LazyBook(buffer, start, rowEnd - start));
+            }
+            start = end + 1;
+        }
+        return bookList;
+    }
+}
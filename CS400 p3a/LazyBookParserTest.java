@@ -0,0 +1,40 @@
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test that lazily parsed books read the same fields as BookParser
+ */
+public class LazyBookParserTest {
+
+    /**
+     * Every field of every row matches the eagerly parsed book
+     */
+    @Test
+    public void test000_same_fields_as_BookParser() throws Exception {
+        ArrayList<Book> eager = BookParser.parse(BookHashTableTest.BOOKS);
+        ArrayList<Book> lazy = LazyBookParser.parse(BookHashTableTest.BOOKS);
+        assertEquals(eager.size(), lazy.size());
+        for (int i = 0; i < eager.size(); i++) {
+            assertEquals(eager.get(i).toString(), lazy.get(i).toString());
+        }
+    }
+
+    /**
+     * Lazy books work as hash table values, keyed by their decoded key
+     */
+    @Test
+    public void test001_lazy_books_in_table() throws Exception {
+        ArrayList<Book> lazy = LazyBookParser.parse(BookHashTableTest.BOOKS);
+        BookHashTable table = new BookHashTable();
+        for (Book book : lazy) {
+            table.insert(book.getKey(), book);
+        }
+        Book book = table.get("9780553803730.0");
+        assertEquals("Second Foundation (Foundation #3)", book.getTitle());
+        assertEquals("4.23", book.getAverageRating());
+        assertEquals("1262", book.getPages());
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A partition held in this JVM: a BookHashTable behind a lock
+ */
+public class LocalPartition implements BookPartition {
+    private final BookHashTable table;
+
+    public LocalPartition() {
+        this(new BookHashTable());
+    }
+
+    /**
+     * @param table the table to serve; it must not be used elsewhere afterwards
+     */
+    public LocalPartition(BookHashTable table) {
+        this.table = table;
+    }
+
+    @Override
+    public synchronized void insert(Book book) throws DuplicateKeyException {
+        try {
+            table.insert(book.getKey(), book);
+        } catch (IllegalNullKeyException e) {
+            throw new IllegalArgumentException("book without a key", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(String key) {
+        try {
+            return table.remove(key);
+        } catch (IllegalNullKeyException e) {
+            throw new IllegalArgumentException("null key", e);
+        }
+    }
+
+    @Override
+    public synchronized List<Book> getAll(List<String> keys) {
+        ArrayList<Book> books = new ArrayList<>(keys.size());
+        try {
+            for (String key : keys) {
+                books.add(table.lookup(key));
+            }
+        } catch (IllegalNullKeyException e) {
+            throw new IllegalArgumentException("null key", e);
+        }
+        return books;
+    }
+
+    @Override
+    public synchronized List<String> keys() {
+        ArrayList<String> keys = new ArrayList<>(table.numKeys());
+        table.scanBuckets(0, table.bucketCount(), book -> keys.add(book.getKey()));
+        return keys;
+    }
+
+    @Override
+    public synchronized int numKeys() {
+        return table.numKeys();
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pipelining client for LookupServer, and a load generator for it.
+ * 
+ * getAll sends requests in windows: a window of requests is written with one
+ * flush, then all of its responses are read before the next window is sent.
+ * Bounding the requests in flight keeps the client and the server from both
+ * blocking on full socket buffers.
+ */
+public class LookupClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final BufferedReader in;
+    private final Writer out;
+
+    /**
+     * Connect to a server address, TCP or Unix domain (see LookupServer.getAddress)
+     */
+    public LookupClient(SocketAddress address) throws IOException {
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(address);
+        in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Look up one key
+     * @return the response line: "OK <row>", "MISS <key>" or "ERR <reason>"
+     */
+    public String get(String key) throws IOException {
+        return getAll(List.of(key), 1, null).get(0);
+    }
+
+    /**
+     * Look up many keys with pipelining
+     * @param window the most requests in flight at once
+     * @param latencies if not null, records the round trip of every request
+     * @return the response lines, in the order of keys
+     */
+    public List<String> getAll(List<String> keys, int window, LatencyHistogram latencies)
+            throws IOException {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        ArrayList<String> responses = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += window) {
+            int to = Math.min(keys.size(), from + window);
+            long sent = System.nanoTime();
+            for (int i = from; i < to; i++) {
+                out.write("GET ");
+                out.write(keys.get(i));
+                out.write('\n');
+            }
+            out.flush();
+            for (int i = from; i < to; i++) {
+                String line = in.readLine();
+                if (line == null) {
+                    throw new IOException("server closed the connection");
+                }
+                if (latencies != null) {
+                    latencies.record(System.nanoTime() - sent);
+                }
+                responses.add(line);
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Start a server on the catalogue and hammer it from many connections:
+     *   java LookupClient books.csv [connections] [requests per connection]
+     *                    [window] [tcp|unix]
+     * Prints throughput, round trip percentiles and the average probe batch.
+     */
+    public static void main(String[] args) throws Exception {
+        String file = args.length > 0 ? args[0] : "books.csv";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int perConnection = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        boolean unix = args.length > 4 && args[4].equals("unix");
+
+        ArrayList<Book> books = BookParser.parse(file);
+        BookHashTable table = new BookHashTable();
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < perConnection; i++) {
+            // one in ten requests misses
+            keys.add(i % 10 == 9 ? "978" + i + ".5" : books.get(i % books.size()).getKey());
+        }
+
+        try (LookupServer server = unix
+                ? LookupServer.unix(table, Path.of(System.getProperty("java.io.tmpdir"),
+                        "books-lookup.sock"))
+                : LookupServer.tcp(table, 0)) {
+            LatencyHistogram latencies = new LatencyHistogram();
+            AtomicLong failures = new AtomicLong();
+            // the first pass only warms up the JIT
+            for (int pass = 0; pass < 2; pass++) {
+                latencies.reset();
+                ArrayList<Thread> clients = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int c = 0; c < connections; c++) {
+                    Thread client = new Thread(() -> {
+                        try (LookupClient lookups = new LookupClient(server.getAddress())) {
+                            lookups.getAll(keys, window, latencies);
+                        } catch (IOException e) {
+                            failures.incrementAndGet();
+                        }
+                    });
+                    client.start();
+                    clients.add(client);
+                }
+                for (Thread client : clients) {
+                    client.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                if (pass == 1) {
+                    System.out.printf("%s, %s threads, %d connections x %d requests, window %d%n",
+                            server.getAddress(),
+                            server.usesVirtualThreads() ? "virtual" : "platform",
+                            connections, perConnection, window);
+                    System.out.printf("throughput %.0f requests/s, failed connections %d%n",
+                            latencies.count() * 1e9 / elapsed, failures.get());
+                    System.out.printf("round trip us: mean %.1f p50 %.1f p99 %.1f p99.9 %.1f"
+                            + " max %.1f%n", latencies.mean() / 1e3,
+                            latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3,
+                            latencies.percentile(99.9) / 1e3, latencies.max() / 1e3);
+                    System.out.printf("average probe batch %.1f requests%n",
+                            server.getCoalescer().getAverageBatchSize());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Funnels lookups from many threads into batches probed by a single thread.
+ * 
+ * Callers submit a key and get a CompletableFuture. One prober thread takes
+ * whatever requests are queued, up to MAX_BATCH at a time, looks them all up one
+ * after the other and completes their futures. Under load a batch holds the
+ * lookups of many connections, so the table is probed in tight loops by one
+ * thread with warm caches; and because only that thread ever touches the table,
+ * a table that is not thread safe, such as BookHashTable, can serve any number
+ * of connections.
+ */
+public class LookupCoalescer implements AutoCloseable {
+    // most requests probed in one batch
+    static final int MAX_BATCH = 256;
+
+    // one queued lookup
+    private static class Request {
+        final String key;
+        final CompletableFuture<Book> result;
+
+        Request(String key, CompletableFuture<Book> result) {
+            this.key = key;
+            this.result = result;
+        }
+    }
+
+    // queued to wake up and stop the prober
+    private static final Request STOP = new Request(null, null);
+
+    private final DataStructureADT<String, Book> table;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread prober;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param table the table to probe; only the prober thread reads it
+     */
+    public LookupCoalescer(DataStructureADT<String, Book> table) {
+        this.table = table;
+        this.prober = new Thread(this::probe, "lookup-coalescer");
+        this.prober.setDaemon(true);
+        this.prober.start();
+    }
+
+    /**
+     * Queue a lookup
+     * @return completes with the book, or with null if the key is not in the table
+     */
+    public CompletableFuture<Book> submit(String key) {
+        CompletableFuture<Book> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new IllegalStateException("coalescer closed"));
+            return result;
+        }
+        Request request = new Request(key, result);
+        queue.add(request);
+        // close() may have run between the check and the add, after the
+        // prober's last look at the queue; take the request back so it is not
+        // left waiting. If it is already gone the prober has it and completes it.
+        if (closed && queue.remove(request)) {
+            result.completeExceptionally(new IllegalStateException("coalescer closed"));
+        }
+        return result;
+    }
+
+    private void probe() {
+        ArrayList<Request> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                batches.increment();
+                for (int i = 0; i < batch.size(); i++) {
+                    Request request = batch.get(i);
+                    if (request == STOP) {
+                        failPending(new ArrayList<>(batch.subList(i + 1, batch.size())));
+                        return;
+                    }
+                    requests.increment();
+                    try {
+                        request.result.complete(BookTableSets.probe(table, request.key));
+                    } catch (RuntimeException e) {
+                        request.result.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failPending(batch);
+        }
+    }
+
+    // fail everything still queued once the prober stops
+    private void failPending(ArrayList<Request> batch) {
+        closed = true;
+        queue.drainTo(batch);
+        for (Request request : batch) {
+            if (request != STOP) {
+                request.result.completeExceptionally(new IllegalStateException("coalescer closed"));
+            }
+        }
+    }
+
+    /**
+     * return the number of batches probed so far
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * return the number of lookups probed so far
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * return the average number of lookups per batch
+     */
+    public double getAverageBatchSize() {
+        long n = batches.sum();
+        return n == 0 ? 0 : (double) requests.sum() / n;
+    }
+
+    /**
+     * Stop the prober after the requests queued before this call
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            queue.add(STOP);
+        }
+    }
+}
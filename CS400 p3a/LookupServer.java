@@ -0,0 +1,236 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A small lookup service over a loopback TCP port or a Unix domain socket.
+ * 
+ * Protocol, one line per message, UTF-8:
+ * 
+ *   request:   GET <isbn>
+ *   response:  OK <the book as a books.csv row>
+ *              MISS <isbn>
+ *              ERR <reason>
+ * 
+ * Clients may pipeline: send many requests without waiting, and read the
+ * responses, which always come back in request order. Every connection is served
+ * by its own thread, a virtual thread when the JVM has them (JDK 21 and later)
+ * and a platform daemon thread otherwise. A connection reads every request that
+ * has already arrived, hands them all to a shared LookupCoalescer, and writes
+ * their responses with a single flush, so concurrent connections end up sharing
+ * batched table probes.
+ */
+public class LookupServer implements AutoCloseable {
+    // most requests a connection reads before answering them
+    static final int MAX_PIPELINE = 1024;
+
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final LookupCoalescer coalescer;
+    private final ThreadFactory connectionThreads;
+    private final boolean virtualThreads;
+    private final ConcurrentLinkedQueue<SocketChannel> connections = new ConcurrentLinkedQueue<>();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Serve the table on a TCP port of the loopback interface
+     * @param port the port, 0 for any free port (see getAddress)
+     */
+    public static LookupServer tcp(DataStructureADT<String, Book> table, int port)
+            throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        return new LookupServer(table, server);
+    }
+
+    /**
+     * Serve the table on a Unix domain socket, replacing a stale socket file
+     * @param path where to create the socket file
+     */
+    public static LookupServer unix(DataStructureADT<String, Book> table, Path path)
+            throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        return new LookupServer(table, server);
+    }
+
+    private LookupServer(DataStructureADT<String, Book> table, ServerSocketChannel server)
+            throws IOException {
+        this.server = server;
+        this.address = server.getLocalAddress();
+        this.coalescer = new LookupCoalescer(table);
+        ThreadFactory virtual = virtualThreadFactory();
+        this.virtualThreads = virtual != null;
+        this.connectionThreads = virtual != null ? virtual : runnable -> {
+            Thread thread = new Thread(runnable, "lookup-connection");
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.acceptor = new Thread(this::accept, "lookup-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * Thread.ofVirtual().factory() through reflection, so the server also runs on
+     * JDKs without virtual threads
+     * @return the factory, null if virtual threads are not available
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * return where the server listens: an InetSocketAddress or a
+     * UnixDomainSocketAddress
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * return true if connections are served by virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public LookupCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                SocketChannel channel = server.accept();
+                connections.add(channel);
+                connectionThreads.newThread(() -> serve(channel)).start();
+            } catch (IOException e) {
+                // the server channel was closed, or the accept failed; keep going
+                // unless we are shutting down
+                if (!server.isOpen()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer the requests of one connection until the client closes it
+     */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            ArrayList<String> lines = new ArrayList<>();
+            ArrayList<CompletableFuture<Book>> results = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                // take every request that already arrived, without blocking
+                lines.add(line);
+                while (lines.size() < MAX_PIPELINE && in.ready()
+                        && (line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+                for (String request : lines) {
+                    results.add(request.startsWith("GET ")
+                            ? coalescer.submit(request.substring(4).trim()) : null);
+                }
+                for (int i = 0; i < lines.size(); i++) {
+                    out.write(response(lines.get(i), results.get(i)));
+                    out.write('\n');
+                }
+                out.flush();
+                lines.clear();
+                results.clear();
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to answer
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    private static String response(String request, CompletableFuture<Book> result) {
+        if (result == null) {
+            return "ERR unknown request: " + request;
+        }
+        try {
+            Book book = result.get();
+            return book == null ? "MISS " + request.substring(4).trim()
+                    : "OK " + BookParser.format(book);
+        } catch (ExecutionException e) {
+            return "ERR " + e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERR interrupted";
+        }
+    }
+
+    /**
+     * Stop accepting, close every open connection and stop the coalescer
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (SocketChannel channel : connections) {
+            channel.close();
+        }
+        coalescer.close();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    /**
+     * Serve a catalogue until the process is killed:
+     *   java LookupServer books.csv tcp 7400
+     *   java LookupServer books.csv unix /tmp/books.sock
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.out.println("usage: LookupServer <books.csv> tcp <port> | unix <path>");
+            return;
+        }
+        BookHashTable table = new BookHashTable();
+        for (Book book : BookParser.parse(args[0])) {
+            table.insert(book.getKey(), book);
+        }
+        LookupServer server = args[1].equals("unix") ? unix(table, Path.of(args[2]))
+                : tcp(table, Integer.parseInt(args[2]));
+        System.out.println("serving " + table.numKeys() + " books on " + server.getAddress()
+                + (server.usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        Thread.currentThread().join();
+    }
+}
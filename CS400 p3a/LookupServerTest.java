@@ -0,0 +1,150 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the lookup server over loopback TCP and a Unix domain socket
+ */
+public class LookupServerTest {
+
+    static ArrayList<Book> books;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    private static BookHashTable table() throws Exception {
+        BookHashTable table = new BookHashTable();
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        return table;
+    }
+
+    // hits, misses and a bad request, answered in order
+    private static void checkResponses(LookupServer server) throws Exception {
+        try (LookupClient client = new LookupClient(server.getAddress())) {
+            Book first = books.get(0);
+            assertEquals("OK " + BookParser.format(first), client.get(first.getKey()));
+            assertEquals("MISS 978-not-a-book", client.get("978-not-a-book"));
+
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                keys.add(i % 4 == 3 ? "missing" + i : books.get(i).getKey());
+            }
+            List<String> responses = client.getAll(keys, 64, null);
+            assertEquals(keys.size(), responses.size());
+            for (int i = 0; i < keys.size(); i++) {
+                String expected = i % 4 == 3 ? "MISS missing" + i
+                        : "OK " + BookParser.format(books.get(i));
+                assertEquals(expected, responses.get(i), "response " + i);
+            }
+        }
+    }
+
+    /**
+     * Check lookups over a loopback TCP port
+     */
+    @Test
+    public void test001_tcp() throws Exception {
+        try (LookupServer server = LookupServer.tcp(table(), 0)) {
+            checkResponses(server);
+        }
+    }
+
+    /**
+     * Check lookups over a Unix domain socket
+     */
+    @Test
+    public void test002_unix_socket() throws Exception {
+        try (LookupServer server = LookupServer.unix(table(), dir.resolve("books.sock"))) {
+            checkResponses(server);
+        }
+    }
+
+    /**
+     * Check that many pipelining connections all get their own answers, while
+     * their lookups are coalesced into shared batches
+     */
+    @Test
+    public void test003_concurrent_connections_are_coalesced() throws Exception {
+        try (LookupServer server = LookupServer.tcp(table(), 0)) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                keys.add(books.get(i).getKey());
+            }
+            List<Throwable> errors = new ArrayList<>();
+            ArrayList<Thread> clients = new ArrayList<>();
+            for (int c = 0; c < 16; c++) {
+                Thread thread = new Thread(() -> {
+                    try (LookupClient client = new LookupClient(server.getAddress())) {
+                        List<String> responses = client.getAll(keys, 32, null);
+                        for (int i = 0; i < keys.size(); i++) {
+                            assertEquals("OK " + BookParser.format(books.get(i)),
+                                    responses.get(i));
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                });
+                thread.start();
+                clients.add(thread);
+            }
+            for (Thread thread : clients) {
+                thread.join();
+            }
+            assertTrue(errors.isEmpty(), "client errors: " + errors);
+            LookupCoalescer coalescer = server.getCoalescer();
+            assertEquals(16 * 2000, coalescer.getRequests());
+            assertTrue(coalescer.getBatches() < coalescer.getRequests());
+        }
+    }
+
+    /**
+     * Check that every lookup submitted while the coalescer is closing is
+     * completed, either with its answer or with an IllegalStateException
+     */
+    @Test
+    public void test004_submit_racing_close_always_completes() throws Exception {
+        BookHashTable table = table();
+        String key = books.get(0).getKey();
+        for (int round = 0; round < 200; round++) {
+            LookupCoalescer coalescer = new LookupCoalescer(table);
+            List<CompletableFuture<Book>> results = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    CompletableFuture<Book> result = coalescer.submit(key);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            });
+            submitter.start();
+            coalescer.close();
+            submitter.join();
+            for (CompletableFuture<Book> result : results) {
+                try {
+                    assertEquals(books.get(0), result.get(10, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+    }
+}
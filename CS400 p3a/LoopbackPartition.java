@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stand-in for a partition living in another local process.
+ * 
+ * The partition's table is owned by one worker thread, the "remote process".
+ * Every call is a round trip to that thread, and everything crossing over is
+ * encoded as text the way a wire protocol would carry it: keys as strings and
+ * books as books.csv rows (BookParser.format and parseLine). No Book object is
+ * ever shared between the two sides, so code that works against this partition
+ * does not rely on anything a real remote partition could not provide.
+ */
+public class LoopbackPartition implements BookPartition {
+    private final LocalPartition remote = new LocalPartition();
+    private final ExecutorService worker;
+    private final LongAdder roundTrips = new LongAdder();
+
+    /**
+     * @param name names the worker thread
+     */
+    public LoopbackPartition(String name) {
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void insert(Book book) throws DuplicateKeyException {
+        String row = BookParser.format(book);
+        Boolean inserted = call(() -> {
+            try {
+                remote.insert(BookParser.parseLine(row));
+                return true;
+            } catch (DuplicateKeyException e) {
+                return false;
+            }
+        });
+        if (!inserted) {
+            throw new DuplicateKeyException();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) {
+        return call(() -> remote.remove(key));
+    }
+
+    @Override
+    public List<Book> getAll(List<String> keys) {
+        List<String> request = new ArrayList<>(keys);
+        List<String> rows = call(() -> {
+            ArrayList<String> response = new ArrayList<>(request.size());
+            for (Book book : remote.getAll(request)) {
+                response.add(book == null ? null : BookParser.format(book));
+            }
+            return response;
+        });
+        ArrayList<Book> books = new ArrayList<>(rows.size());
+        for (String row : rows) {
+            books.add(row == null ? null : BookParser.parseLine(row));
+        }
+        return books;
+    }
+
+    @Override
+    public List<String> keys() {
+        return call(remote::keys);
+    }
+
+    @Override
+    public int numKeys() {
+        return call(remote::numKeys);
+    }
+
+    /**
+     * the number of calls made to the remote side
+     */
+    public long getRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    @Override
+    public void close() {
+        worker.shutdown();
+    }
+
+    // one round trip, waiting for the answer
+    private <T> T call(Callable<T> request) {
+        roundTrips.increment();
+        try {
+            return worker.submit(request).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("partition call failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for the partition", e);
+        }
+    }
+}
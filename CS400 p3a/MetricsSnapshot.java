@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of the counters kept by TableMetrics at one point in time,
+ * together with the chain length distribution of the table it was taken from.
+ */
+public class MetricsSnapshot {
+
+    /**
+     * One resize of the table: the capacity before and after, and how long the
+     * rehash took.
+     */
+    public static class ResizeEvent {
+        private final int oldCapacity;
+        private final int newCapacity;
+        private final long durationNanos;
+        private final long timestampMillis;
+
+        public ResizeEvent(int oldCapacity, int newCapacity, long durationNanos,
+                long timestampMillis) {
+            this.oldCapacity = oldCapacity;
+            this.newCapacity = newCapacity;
+            this.durationNanos = durationNanos;
+            this.timestampMillis = timestampMillis;
+        }
+
+        public int getOldCapacity() {
+            return oldCapacity;
+        }
+
+        public int getNewCapacity() {
+            return newCapacity;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        @Override
+        public String toString() {
+            return oldCapacity + " -> " + newCapacity + " in " + durationNanos + "ns";
+        }
+    }
+
+    /**
+     * Summary of one latency histogram
+     */
+    public static class Latency {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Latency(LatencyHistogram histogram) {
+            this.count = histogram.count();
+            this.mean = histogram.mean();
+            this.p50 = histogram.percentile(50);
+            this.p90 = histogram.percentile(90);
+            this.p99 = histogram.percentile(99);
+            this.p999 = histogram.percentile(99.9);
+            this.max = histogram.max();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) mean + "ns, p50=" + p50 + "ns, p90="
+                    + p90 + "ns, p99=" + p99 + "ns, p99.9=" + p999 + "ns, max=" + max + "ns";
+        }
+    }
+
+    private final long inserts;
+    private final long gets;
+    private final long getMisses;
+    private final long removes;
+    private final long removeMisses;
+    private final Latency insertLatency;
+    private final Latency getLatency;
+    private final Latency removeLatency;
+    private final List<ResizeEvent> resizeEvents;
+    private final long resizes;
+    private final long totalResizeNanos;
+    // chainLengths[i] is the number of buckets holding exactly i keys
+    private final long[] chainLengths;
+
+    MetricsSnapshot(long inserts, long gets, long getMisses, long removes, long removeMisses,
+            Latency insertLatency, Latency getLatency, Latency removeLatency,
+            long resizes, long totalResizeNanos, List<ResizeEvent> resizeEvents,
+            long[] chainLengths) {
+        this.inserts = inserts;
+        this.gets = gets;
+        this.getMisses = getMisses;
+        this.removes = removes;
+        this.removeMisses = removeMisses;
+        this.insertLatency = insertLatency;
+        this.getLatency = getLatency;
+        this.removeLatency = removeLatency;
+        this.resizes = resizes;
+        this.totalResizeNanos = totalResizeNanos;
+        this.resizeEvents = Collections.unmodifiableList(new ArrayList<>(resizeEvents));
+        this.chainLengths = chainLengths.clone();
+    }
+
+    public long getInserts() {
+        return inserts;
+    }
+
+    public long getGets() {
+        return gets;
+    }
+
+    /**
+     * return the number of get calls that ended in a KeyNotFoundException
+     */
+    public long getGetMisses() {
+        return getMisses;
+    }
+
+    /**
+     * return the fraction of get calls that missed, 0 if there were none
+     */
+    public double getMissRate() {
+        return gets == 0 ? 0 : (double) getMisses / gets;
+    }
+
+    public long getRemoves() {
+        return removes;
+    }
+
+    /**
+     * return the number of remove calls that returned false
+     */
+    public long getRemoveMisses() {
+        return removeMisses;
+    }
+
+    public Latency getInsertLatency() {
+        return insertLatency;
+    }
+
+    public Latency getGetLatency() {
+        return getLatency;
+    }
+
+    public Latency getRemoveLatency() {
+        return removeLatency;
+    }
+
+    /**
+     * return the total number of resizes, even the ones no longer kept in
+     * getResizeEvents()
+     */
+    public long getResizes() {
+        return resizes;
+    }
+
+    public long getTotalResizeNanos() {
+        return totalResizeNanos;
+    }
+
+    /**
+     * return the most recent resize events, oldest first
+     */
+    public List<ResizeEvent> getResizeEvents() {
+        return resizeEvents;
+    }
+
+    /**
+     * return a copy of the chain length distribution: element i is the number
+     * of buckets holding exactly i keys
+     */
+    public long[] getChainLengthDistribution() {
+        return chainLengths.clone();
+    }
+
+    /**
+     * return the length of the longest chain in the table
+     */
+    public int getLongestChain() {
+        return longestChain(chainLengths);
+    }
+
+    /**
+     * return the average length of the non empty chains
+     */
+    public double getAverageChainLength() {
+        return averageChainLength(chainLengths);
+    }
+
+    static int longestChain(long[] chainLengths) {
+        for (int i = chainLengths.length - 1; i > 0; i--) {
+            if (chainLengths[i] != 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    static double averageChainLength(long[] chainLengths) {
+        long buckets = 0;
+        long keys = 0;
+        for (int i = 1; i < chainLengths.length; i++) {
+            buckets += chainLengths[i];
+            keys += chainLengths[i] * i;
+        }
+        return buckets == 0 ? 0 : (double) keys / buckets;
+    }
+
+    @Override
+    public String toString() {
+        return "inserts=" + inserts + ", gets=" + gets + " (misses=" + getMisses + ")"
+                + ", removes=" + removes + " (misses=" + removeMisses + ")"
+                + ", resizes=" + resizes + " (" + totalResizeNanos + "ns)"
+                + ", longestChain=" + getLongestChain()
+                + "\n  insert: " + insertLatency
+                + "\n  get:    " + getLatency
+                + "\n  remove: " + removeLatency;
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * A hash table that passes every call to another one and records it, with its
+ * key, its outcome and when it happened, in the BookTrace format.
+ * 
+ * Recording is synchronized, so a table used from several threads is recorded
+ * as one sequence in the order the calls finished. Only the keys are recorded;
+ * a replay supplies the books to insert.
+ */
+public class RecordingBookTable implements HashTableADT<String, Book>, AutoCloseable {
+    private final HashTableADT<String, Book> table;
+    private final OutputStream out;
+    // the id given to each key already written
+    private final HashMap<String, Integer> keyIds = new HashMap<>();
+    private final LongSupplier clock;
+    private long lastNanos;
+    private long records;
+
+    /**
+     * @param table the table to pass calls to
+     * @param out where the trace is written; closed by close
+     */
+    public RecordingBookTable(HashTableADT<String, Book> table, OutputStream out)
+            throws IOException {
+        this(table, out, System::nanoTime);
+    }
+
+    /**
+     * @param clock the time in nanoseconds, like System.nanoTime; a simulated
+     * clock lets a generated workload carry its own timing
+     */
+    RecordingBookTable(HashTableADT<String, Book> table, OutputStream out, LongSupplier clock)
+            throws IOException {
+        this.table = table;
+        this.clock = clock;
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.out.write(BookTrace.MAGIC);
+        this.out.write(BookTrace.VERSION);
+        this.lastNanos = clock.getAsLong();
+    }
+
+    @Override
+    public void insert(String key, Book value)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        try {
+            table.insert(key, value);
+            record(BookTrace.INSERT, BookTrace.OK, key);
+        } catch (DuplicateKeyException e) {
+            record(BookTrace.INSERT, BookTrace.MISS, key);
+            throw e;
+        } catch (IllegalNullKeyException e) {
+            record(BookTrace.INSERT, BookTrace.NULL_KEY, key);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        try {
+            boolean removed = table.remove(key);
+            record(BookTrace.REMOVE, removed ? BookTrace.OK : BookTrace.MISS, key);
+            return removed;
+        } catch (IllegalNullKeyException e) {
+            record(BookTrace.REMOVE, BookTrace.NULL_KEY, key);
+            throw e;
+        }
+    }
+
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        try {
+            Book book = table.get(key);
+            record(BookTrace.GET, BookTrace.OK, key);
+            return book;
+        } catch (KeyNotFoundException e) {
+            record(BookTrace.GET, BookTrace.MISS, key);
+            throw e;
+        } catch (IllegalNullKeyException e) {
+            record(BookTrace.GET, BookTrace.NULL_KEY, key);
+            throw e;
+        }
+    }
+
+    @Override
+    public int numKeys() {
+        return table.numKeys();
+    }
+
+    @Override
+    public double getLoadFactorThreshold() {
+        return table.getLoadFactorThreshold();
+    }
+
+    @Override
+    public int getCapacity() {
+        return table.getCapacity();
+    }
+
+    @Override
+    public int getCollisionResolutionScheme() {
+        return table.getCollisionResolutionScheme();
+    }
+
+    /**
+     * the number of operations recorded so far
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    /**
+     * Flush and close the trace
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    private synchronized void record(int operation, int outcome, String key) {
+        long now = clock.getAsLong();
+        try {
+            out.write(operation | outcome << 2);
+            writeVarint(Math.max(0, now - lastNanos));
+            lastNanos = now;
+            if (key == null) {
+                writeVarint(0);
+            } else {
+                Integer id = keyIds.get(key);
+                if (id != null) {
+                    writeVarint(id);
+                } else {
+                    writeVarint(keyIds.size() + 1);
+                    keyIds.put(key, keyIds.size() + 1);
+                    byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            records++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
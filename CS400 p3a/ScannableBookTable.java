@@ -0,0 +1,24 @@
+import java.util.function.Consumer;
+
+/**
+ * A book table whose contents can be read bucket by bucket, so that work over
+ * the whole table can be split into independent bucket ranges (see
+ * BookTableSets). What a bucket is depends on the table: a chain for
+ * BookHashTable, a slot for the open addressing and frozen tables.
+ * 
+ * Scans are reads: several threads may scan disjoint or overlapping ranges at
+ * the same time as long as nobody modifies the table meanwhile.
+ */
+public interface ScannableBookTable extends HashTableADT<String, Book> {
+
+    // Returns the number of buckets, valid bucket indexes are 0 to bucketCount() - 1
+    int bucketCount();
+
+    // Passes every book stored in buckets fromBucket (inclusive) to toBucket
+    // (exclusive) to action
+    void scanBuckets(int fromBucket, int toBucket, Consumer<Book> action);
+
+    // Returns the book stored under key, or null if there is none.
+    // If key is null, throw IllegalNullKeyException
+    Book lookup(CharSequence key) throws IllegalNullKeyException;
+}
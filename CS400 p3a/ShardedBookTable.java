@@ -0,0 +1,327 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A book table spread over named partitions by consistent hashing.
+ * 
+ * Each key lives in exactly one partition, picked by a ConsistentHashRing with
+ * virtual nodes. Partitions can be in this JVM (LocalPartition) or elsewhere
+ * (LoopbackPartition stands in for a local process). When a partition is added
+ * or removed, only the keys whose owner changed are moved: the ones the new
+ * partition takes over from its neighbours, or the ones of the removed partition.
+ * 
+ * getAll groups the keys by partition and sends one batch to each partition,
+ * all of them at once on the executor.
+ * 
+ * Reads and writes run concurrently (the partitions are thread safe); adding or
+ * removing a partition waits for them and blocks them while keys move.
+ */
+public class ShardedBookTable implements DataStructureADT<String, Book> {
+    // points per partition on the ring
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    /**
+     * What a rebalance did
+     */
+    public static class Rebalance {
+        private final String partition;
+        private final int moved;
+        private final long nanos;
+
+        Rebalance(String partition, int moved, long nanos) {
+            this.partition = partition;
+            this.moved = moved;
+            this.nanos = nanos;
+        }
+
+        /**
+         * the partition that was added or removed
+         */
+        public String getPartition() {
+            return partition;
+        }
+
+        /**
+         * the number of keys that changed partition
+         */
+        public int getMoved() {
+            return moved;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return partition + ": moved " + moved + " keys in " + nanos / 1000 + " us";
+        }
+    }
+
+    private final int virtualNodes;
+    private final Executor executor;
+    private final Map<String, BookPartition> partitions = new LinkedHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile ConsistentHashRing ring;
+
+    public ShardedBookTable() {
+        this(DEFAULT_VIRTUAL_NODES, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param virtualNodes points per partition on the ring; more points even out
+     * the share of keys per partition
+     * @param executor runs the per-partition batches of getAll
+     */
+    public ShardedBookTable(int virtualNodes, Executor executor) {
+        this.virtualNodes = virtualNodes;
+        this.executor = executor;
+        this.ring = new ConsistentHashRing(List.of(), virtualNodes);
+    }
+
+    /**
+     * Add a partition and move to it the keys it now owns
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public Rebalance addPartition(String name, BookPartition partition) {
+        lock.writeLock().lock();
+        try {
+            if (partitions.containsKey(name)) {
+                throw new IllegalArgumentException("partition exists: " + name);
+            }
+            long start = System.nanoTime();
+            ConsistentHashRing next = ring.with(name);
+            int moved = 0;
+            for (BookPartition from : partitions.values()) {
+                ArrayList<String> taken = new ArrayList<>();
+                for (String key : from.keys()) {
+                    if (next.owner(key).equals(name)) {
+                        taken.add(key);
+                    }
+                }
+                moved += move(from, partition, taken);
+            }
+            partitions.put(name, partition);
+            ring = next;
+            return new Rebalance(name, moved, System.nanoTime() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a partition, handing its keys to the partitions that now own them,
+     * and close it
+     * @throws IllegalArgumentException if there is no such partition
+     * @throws IllegalStateException if it is the last partition and has keys
+     */
+    public Rebalance removePartition(String name) {
+        lock.writeLock().lock();
+        try {
+            BookPartition removed = partitions.get(name);
+            if (removed == null) {
+                throw new IllegalArgumentException("no partition " + name);
+            }
+            long start = System.nanoTime();
+            ConsistentHashRing next = ring.without(name);
+            List<String> keys = removed.keys();
+            if (next.isEmpty() && !keys.isEmpty()) {
+                throw new IllegalStateException("can not remove the last partition");
+            }
+            int moved = 0;
+            for (Map.Entry<String, ArrayList<String>> group : groupByOwner(next, keys)
+                    .entrySet()) {
+                moved += move(removed, partitions.get(group.getKey()), group.getValue());
+            }
+            partitions.remove(name);
+            ring = next;
+            removed.close();
+            return new Rebalance(name, moved, System.nanoTime() - start);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // copy keys over, then drop them from where they were
+    private static int move(BookPartition from, BookPartition to, List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        for (Book book : from.getAll(keys)) {
+            try {
+                to.insert(book);
+            } catch (DuplicateKeyException e) {
+                throw new IllegalStateException("key in two partitions: " + book.getKey(), e);
+            }
+        }
+        for (String key : keys) {
+            from.remove(key);
+        }
+        return keys.size();
+    }
+
+    /**
+     * the names of the partitions, in the order they were added
+     */
+    public List<String> partitionNames() {
+        return ring.nodes();
+    }
+
+    /**
+     * the number of keys in each partition
+     */
+    public Map<String, Integer> partitionSizes() {
+        lock.readLock().lock();
+        try {
+            LinkedHashMap<String, Integer> sizes = new LinkedHashMap<>();
+            for (Map.Entry<String, BookPartition> entry : partitions.entrySet()) {
+                sizes.put(entry.getKey(), entry.getValue().numKeys());
+            }
+            return sizes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * the name of the partition a key belongs to
+     */
+    public String partitionOf(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        return ring.owner(key);
+    }
+
+    @Override
+    public void insert(String key, Book value)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (value == null || !key.equals(value.getKey())) {
+            throw new IllegalArgumentException("the book must be stored under its own key");
+        }
+        lock.readLock().lock();
+        try {
+            owner(key).insert(value);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        lock.readLock().lock();
+        try {
+            return owner(key).remove(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        Book book;
+        lock.readLock().lock();
+        try {
+            book = owner(key).getAll(List.of(key)).get(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (book == null) {
+            throw new KeyNotFoundException();
+        }
+        return book;
+    }
+
+    /**
+     * Look up many keys with one batch per partition, all partitions at once
+     * @return the books in the order of keys, null for the keys not found
+     */
+    public List<Book> getAll(List<String> keys) throws IllegalNullKeyException {
+        for (String key : keys) {
+            if (key == null) {
+                throw new IllegalNullKeyException();
+            }
+        }
+        Book[] books = new Book[keys.size()];
+        lock.readLock().lock();
+        try {
+            ConsistentHashRing current = ring;
+            // the positions in keys of every partition's keys
+            HashMap<String, ArrayList<Integer>> positions = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                positions.computeIfAbsent(current.owner(keys.get(i)), name -> new ArrayList<>())
+                        .add(i);
+            }
+            ArrayList<CompletableFuture<Void>> batches = new ArrayList<>();
+            for (Map.Entry<String, ArrayList<Integer>> group : positions.entrySet()) {
+                BookPartition partition = partitions.get(group.getKey());
+                ArrayList<Integer> at = group.getValue();
+                ArrayList<String> batch = new ArrayList<>(at.size());
+                for (int i : at) {
+                    batch.add(keys.get(i));
+                }
+                Runnable fetch = () -> {
+                    List<Book> found = partition.getAll(batch);
+                    for (int j = 0; j < at.size(); j++) {
+                        books[at.get(j)] = found.get(j);
+                    }
+                };
+                if (positions.size() == 1) {
+                    fetch.run();
+                } else {
+                    batches.add(CompletableFuture.runAsync(fetch, executor));
+                }
+            }
+            // join also makes the writes to books visible here
+            CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.asList(books);
+    }
+
+    @Override
+    public int numKeys() {
+        lock.readLock().lock();
+        try {
+            int n = 0;
+            for (BookPartition partition : partitions.values()) {
+                n += partition.numKeys();
+            }
+            return n;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the partition of a key, with the read lock held
+    private BookPartition owner(String key) {
+        return partitions.get(ring.owner(key));
+    }
+
+    private static HashMap<String, ArrayList<String>> groupByOwner(ConsistentHashRing ring,
+            List<String> keys) {
+        HashMap<String, ArrayList<String>> groups = new HashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(ring.owner(key), name -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test key placement, rebalancing and batch lookups of ShardedBookTable
+ */
+public class ShardedBookTableTest {
+
+    static ArrayList<Book> books;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    private static ShardedBookTable filled(int partitions) throws Exception {
+        ShardedBookTable table = new ShardedBookTable();
+        for (int i = 0; i < partitions; i++) {
+            table.addPartition("p" + i, new LocalPartition());
+        }
+        for (Book book : books) {
+            table.insert(book.getKey(), book);
+        }
+        return table;
+    }
+
+    // every book is found, in the partition the ring names, and nowhere else
+    private static void checkPlacement(ShardedBookTable table) throws Exception {
+        assertEquals(books.size(), table.numKeys());
+        int total = 0;
+        for (int size : table.partitionSizes().values()) {
+            total += size;
+        }
+        assertEquals(books.size(), total);
+        for (Book book : books) {
+            assertEquals(book.getKey(), table.get(book.getKey()).getKey());
+        }
+    }
+
+    /**
+     * Check that keys spread evenly over the partitions
+     */
+    @Test
+    public void test001_keys_are_spread_evenly() throws Exception {
+        ShardedBookTable table = filled(4);
+        checkPlacement(table);
+        for (int size : table.partitionSizes().values()) {
+            // a quarter each, give or take
+            assertTrue(size > books.size() * 0.18 && size < books.size() * 0.32,
+                    "partition sizes " + table.partitionSizes());
+        }
+    }
+
+    /**
+     * Check that adding a partition moves only the keys it takes over, and
+     * removing one moves only its own keys
+     */
+    @Test
+    public void test002_rebalance_moves_only_affected_keys() throws Exception {
+        ShardedBookTable table = filled(4);
+        ArrayList<String> before = new ArrayList<>();
+        for (Book book : books) {
+            before.add(table.partitionOf(book.getKey()));
+        }
+
+        ShardedBookTable.Rebalance added = table.addPartition("p4", new LocalPartition());
+        int changed = 0;
+        for (int i = 0; i < books.size(); i++) {
+            String now = table.partitionOf(books.get(i).getKey());
+            if (!now.equals(before.get(i))) {
+                assertEquals("p4", now);
+                changed++;
+            }
+        }
+        assertEquals(changed, added.getMoved());
+        assertEquals(changed, (int) table.partitionSizes().get("p4"));
+        assertTrue(changed > books.size() * 0.12 && changed < books.size() * 0.28,
+                "moved " + changed);
+        checkPlacement(table);
+
+        int size = table.partitionSizes().get("p1");
+        ShardedBookTable.Rebalance removed = table.removePartition("p1");
+        assertEquals(size, removed.getMoved());
+        assertEquals(List.of("p0", "p2", "p3", "p4"), table.partitionNames());
+        checkPlacement(table);
+    }
+
+    /**
+     * Check that getAll keeps the order of the keys across partitions and
+     * reports misses as null
+     */
+    @Test
+    public void test003_batch_get() throws Exception {
+        ShardedBookTable table = filled(3);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            keys.add(i % 5 == 0 ? "missing" + i : books.get(i).getKey());
+        }
+        List<Book> found = table.getAll(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            if (i % 5 == 0) {
+                assertNull(found.get(i));
+            } else {
+                assertSame(books.get(i), found.get(i));
+            }
+        }
+        assertEquals(false, table.remove("missing"));
+        try {
+            table.insert(books.get(1).getKey(), books.get(1));
+            fail("a duplicate key should be rejected");
+        } catch (DuplicateKeyException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Check that partitions behind the loopback transport hold the same books and
+     * a batch costs one round trip per partition
+     */
+    @Test
+    public void test004_loopback_partitions() throws Exception {
+        ShardedBookTable table = new ShardedBookTable();
+        LoopbackPartition remote = new LoopbackPartition("remote");
+        table.addPartition("local", new LocalPartition());
+        table.addPartition("remote", remote);
+        for (Book book : books.subList(0, 2000)) {
+            table.insert(book.getKey(), book);
+        }
+        Map<String, Integer> sizes = table.partitionSizes();
+        assertEquals(2000, sizes.get("local") + sizes.get("remote"));
+
+        List<String> keys = new ArrayList<>();
+        for (Book book : books.subList(0, 2000)) {
+            keys.add(book.getKey());
+        }
+        long trips = remote.getRoundTrips();
+        List<Book> found = table.getAll(keys);
+        assertEquals(trips + 1, remote.getRoundTrips());
+        for (int i = 0; i < keys.size(); i++) {
+            // remote books are copies, decoded from their rows
+            assertEquals(BookParser.format(books.get(i)), BookParser.format(found.get(i)));
+        }
+
+        table.removePartition("remote");
+        assertEquals(2000, table.partitionSizes().get("local"));
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * Algorithm Explanations:
+ * 
+ * This is the same separate chaining table as BookHashTable (an array of linked
+ * lists, grown to 2 * capacity + 1 when the load factor threshold is reached),
+ * but it is allowed to give memory back. HashTableADT says that the capacity
+ * never decreases, so this class only implements DataStructureADT.
+ * 
+ * remove() drops a bucket's LinkedList as soon as it becomes empty. When
+ * compaction is enabled and the load factor falls below the low-water mark,
+ * the table shrinks to (capacity - 1) / 2, the inverse of the growth step,
+ * until the load is back above the low-water mark or the minimum capacity is
+ * reached. The low-water mark must be less than half of the load factor
+ * threshold, otherwise a shrink could immediately trigger a grow again.
+ */
+public class ShrinkingBookHashTable implements DataStructureADT<String, Book> {
+    // initial value of the capacity if none is specified
+    static final int DEFAULT_CAPACITY = 101;
+    // initial load factor threshold if none is specified
+    static final double DEFAULT_LOAD_FACTOR_THRESHOLD = 0.75;
+    // load factor below which the table shrinks if none is specified
+    static final double DEFAULT_LOW_WATER_LOAD_FACTOR = 0.2;
+
+    // the buckets, null where no key hashes to
+    private LinkedList<Book>[] hashLinkedList;
+    // load factor at which the table grows
+    private final double loadFactorThreshold;
+    // load factor below which the table shrinks
+    private final double lowWaterLoadFactor;
+    // the capacity never goes below the initial capacity
+    private final int minCapacity;
+    // whether remove() shrinks the table automatically
+    private boolean compactionEnabled;
+    // number of keys
+    private int numKeys;
+
+    /**
+     * Uses default capacity, thresholds, and enables compaction
+     */
+    public ShrinkingBookHashTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR_THRESHOLD, DEFAULT_LOW_WATER_LOAD_FACTOR, true);
+    }
+
+    /**
+     * @param initialCapacity the starting capacity, also the smallest capacity the
+     *        table will shrink to
+     * @param loadFactorThreshold the load factor at which the table grows
+     * @param lowWaterLoadFactor the load factor below which the table shrinks
+     * @param compactionEnabled whether remove() shrinks the table by itself
+     * @throws IllegalArgumentException if the capacity is not positive or the
+     *         low-water mark is not below half the threshold
+     */
+    public ShrinkingBookHashTable(int initialCapacity, double loadFactorThreshold,
+            double lowWaterLoadFactor, boolean compactionEnabled) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initial capacity must be 1 or greater");
+        }
+        if (lowWaterLoadFactor < 0 || lowWaterLoadFactor * 2 >= loadFactorThreshold) {
+            throw new IllegalArgumentException(
+                    "low-water load factor must be less than half of the load factor threshold");
+        }
+        this.minCapacity = initialCapacity;
+        this.loadFactorThreshold = loadFactorThreshold;
+        this.lowWaterLoadFactor = lowWaterLoadFactor;
+        this.compactionEnabled = compactionEnabled;
+        this.hashLinkedList = newBuckets(initialCapacity);
+    }
+
+    // generic arrays can not be created directly
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static LinkedList<Book>[] newBuckets(int capacity) {
+        return new LinkedList[capacity];
+    }
+
+    /**
+     * Add the key,value pair to the table, growing it first if the load factor
+     * threshold has been reached.
+     * If key is null, throw IllegalNullKeyException;
+     * If key is already in data structure, throw DuplicateKeyException();
+     */
+    @Override
+    public void insert(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        int hashIndex = indexFor(key, hashLinkedList.length);
+        if (find(hashLinkedList[hashIndex], key) != null) {
+            throw new DuplicateKeyException();
+        }
+        if (numKeys > 0 && (double) numKeys / hashLinkedList.length >= loadFactorThreshold) {
+            resize(hashLinkedList.length * 2 + 1);
+            hashIndex = indexFor(key, hashLinkedList.length);
+        }
+        if (hashLinkedList[hashIndex] == null) {
+            hashLinkedList[hashIndex] = new LinkedList<>();
+        }
+        hashLinkedList[hashIndex].add(value);
+        numKeys++;
+    }
+
+    /**
+     * If key is found, remove the key,value pair, release its bucket if it is
+     * now empty, shrink the table if compaction is enabled, and return true.
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, return false
+     */
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        int hashIndex = indexFor(key, hashLinkedList.length);
+        LinkedList<Book> bucket = hashLinkedList[hashIndex];
+        Book book = find(bucket, key);
+        if (book == null) {
+            return false;
+        }
+        bucket.remove(book);
+        // give the empty bucket object back right away
+        if (bucket.isEmpty()) {
+            hashLinkedList[hashIndex] = null;
+        }
+        numKeys--;
+        if (compactionEnabled) {
+            shrinkToLowWater();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value associated with the specified key
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, throw KeyNotFoundException().
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        Book book = find(hashLinkedList[indexFor(key, hashLinkedList.length)], key);
+        if (book == null) {
+            throw new KeyNotFoundException();
+        }
+        return book;
+    }
+
+    /**
+     * return the number of keys in the hash table
+     */
+    @Override
+    public int numKeys() {
+        return numKeys;
+    }
+
+    /**
+     * return the current capacity, which may be smaller than it was before
+     */
+    public int getCapacity() {
+        return hashLinkedList.length;
+    }
+
+    /**
+     * return the load factor at which the table grows
+     */
+    public double getLoadFactorThreshold() {
+        return loadFactorThreshold;
+    }
+
+    /**
+     * return the load factor below which the table shrinks
+     */
+    public double getLowWaterLoadFactor() {
+        return lowWaterLoadFactor;
+    }
+
+    public boolean isCompactionEnabled() {
+        return compactionEnabled;
+    }
+
+    /**
+     * Turn automatic shrinking in remove() on or off
+     */
+    public void setCompactionEnabled(boolean compactionEnabled) {
+        this.compactionEnabled = compactionEnabled;
+    }
+
+    /**
+     * Release every empty bucket object. remove() already does this, so this
+     * only matters for tables filled before compaction was turned on.
+     * @return the number of buckets released
+     */
+    public int compact() {
+        int released = 0;
+        for (int i = 0; i < hashLinkedList.length; i++) {
+            if (hashLinkedList[i] != null && hashLinkedList[i].isEmpty()) {
+                hashLinkedList[i] = null;
+                released++;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * Shrink the table to the smallest capacity in the growth sequence that keeps
+     * the load factor below the threshold, but never below the initial capacity.
+     * Works whether or not compaction is enabled.
+     * @return the new capacity
+     */
+    public int trimToSize() {
+        int target = hashLinkedList.length;
+        while (target > minCapacity) {
+            int smaller = (target - 1) / 2;
+            if (smaller < minCapacity || (double) numKeys / smaller >= loadFactorThreshold) {
+                break;
+            }
+            target = smaller;
+        }
+        if (target != hashLinkedList.length) {
+            resize(target);
+        }
+        return target;
+    }
+
+    /**
+     * Shrink one growth step at a time until the load factor is back above the
+     * low-water mark
+     */
+    private void shrinkToLowWater() {
+        int target = hashLinkedList.length;
+        while (target > minCapacity && (double) numKeys / target < lowWaterLoadFactor) {
+            int smaller = (target - 1) / 2;
+            if (smaller < minCapacity) {
+                break;
+            }
+            target = smaller;
+        }
+        if (target != hashLinkedList.length) {
+            resize(target);
+        }
+    }
+
+    /**
+     * Move every book into a new bucket array of the given capacity
+     */
+    private void resize(int newCapacity) {
+        ArrayList<Book> books = new ArrayList<>(numKeys);
+        for (LinkedList<Book> bucket : hashLinkedList) {
+            if (bucket != null) {
+                books.addAll(bucket);
+            }
+        }
+        hashLinkedList = newBuckets(newCapacity);
+        for (Book book : books) {
+            int hashIndex = indexFor(book.getKey(), newCapacity);
+            if (hashLinkedList[hashIndex] == null) {
+                hashLinkedList[hashIndex] = new LinkedList<>();
+            }
+            hashLinkedList[hashIndex].add(book);
+        }
+    }
+
+    // same index calculation as BookHashTable
+    private static int indexFor(String key, int capacity) {
+        return (key.hashCode() & 0x7FFFFFFF) % capacity;
+    }
+
+    private static Book find(LinkedList<Book> bucket, String key) {
+        if (bucket == null) {
+            return null;
+        }
+        for (Book book : bucket) {
+            if (key.equals(book.getKey())) {
+                return book;
+            }
+        }
+        return null;
+    }
+}
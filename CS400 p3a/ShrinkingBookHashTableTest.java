@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test that ShrinkingBookHashTable gives capacity back after heavy removal
+ */
+public class ShrinkingBookHashTableTest {
+
+    static ArrayList<Book> bookTable;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Remove almost every key and check that the table shrank back
+     */
+    @Test
+    public void test000_shrinks_after_removeMany() throws Exception {
+        ShrinkingBookHashTable table = new ShrinkingBookHashTable(11, 0.75, 0.2, true);
+        for (int i = 0; i < 1000; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        int grown = table.getCapacity();
+        for (int i = 0; i < 990; i++) {
+            table.remove(bookTable.get(i).getKey());
+        }
+        assertTrue(table.getCapacity() < grown);
+        assertTrue(table.getCapacity() >= 11);
+        assertEquals(10, table.numKeys());
+        for (int i = 990; i < 1000; i++) {
+            assertEquals(bookTable.get(i), table.get(bookTable.get(i).getKey()));
+        }
+    }
+
+    /**
+     * With compaction off the capacity stays until trimToSize is called
+     */
+    @Test
+    public void test001_trimToSize_when_compaction_disabled() throws Exception {
+        ShrinkingBookHashTable table = new ShrinkingBookHashTable(11, 0.75, 0.2, false);
+        for (int i = 0; i < 500; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        int grown = table.getCapacity();
+        for (int i = 0; i < 495; i++) {
+            table.remove(bookTable.get(i).getKey());
+        }
+        assertEquals(grown, table.getCapacity());
+        assertEquals(11, table.trimToSize());
+        assertEquals(bookTable.get(499), table.get(bookTable.get(499).getKey()));
+    }
+
+    /**
+     * A low-water mark too close to the threshold would make the table thrash
+     */
+    @Test
+    public void test002_rejects_low_water_above_half_threshold() {
+        try {
+            new ShrinkingBookHashTable(11, 0.75, 0.4, true);
+            fail("IllegalArgumentException is not thrown");
+        }
+        catch(IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * SWAR (SIMD within a register) group matching: a group is read as two
+ * little-endian longs and all eight bytes of each are tested at once with
+ * ordinary arithmetic. Control bytes are EMPTY = 0x80, DELETED = 0xFE and
+ * FULL = 0x00..0x7F (the 7-bit hash fragment), the same encoding Abseil uses.
+ */
+class SwarGroupMatcher implements GroupMatcher {
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+
+    @Override
+    public int match(byte[] ctrl, int offset, byte h2) {
+        long pattern = LSBS * (h2 & 0xFF);
+        return movemask(matchByte((long) LONGS.get(ctrl, offset) ^ pattern))
+                | movemask(matchByte((long) LONGS.get(ctrl, offset + 8) ^ pattern)) << 8;
+    }
+
+    @Override
+    public int matchEmpty(byte[] ctrl, int offset) {
+        return movemask(matchEmpty((long) LONGS.get(ctrl, offset)))
+                | movemask(matchEmpty((long) LONGS.get(ctrl, offset + 8))) << 8;
+    }
+
+    @Override
+    public int matchEmptyOrDeleted(byte[] ctrl, int offset) {
+        return movemask((long) LONGS.get(ctrl, offset) & MSBS)
+                | movemask((long) LONGS.get(ctrl, offset + 8) & MSBS) << 8;
+    }
+
+    // high bit of each zero byte; a byte just above a real match may also be set
+    private static long matchByte(long x) {
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    // high bit set and bit 1 clear only holds for 0x80
+    private static long matchEmpty(long word) {
+        return word & ~(word << 6) & MSBS;
+    }
+
+    // gather the high bit of every byte into the low 8 bits
+    private static int movemask(long highBits) {
+        return (int) (((highBits >>> 7) * 0x0102040810204080L) >>> 56);
+    }
+}
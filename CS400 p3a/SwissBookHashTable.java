@@ -0,0 +1,354 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Algorithm Explanations:
+ * 
+ * A flat open addressing table in the style of SwissTable. Keys and books live
+ * directly in two parallel arrays, and a third array holds one control byte per
+ * slot: EMPTY, DELETED, or, for a full slot, the low 7 bits of the key's hash
+ * (h2). The remaining hash bits (h1) pick a starting group of 16 slots.
+ * 
+ * A lookup loads the 16 control bytes of a group and compares all of them with
+ * h2 at once (see GroupMatcher), then compares keys only for the slots that
+ * matched, which on average is just the right one. If the group has an EMPTY
+ * slot the key cannot be further along, otherwise the probe moves to the next
+ * group. Because most of the work is one wide compare per group, the table keeps
+ * its speed at load factors where chaining or linear probing slows down.
+ * 
+ * remove() marks a slot DELETED (a tombstone) if its group is full, so probes
+ * passing through keep going, and EMPTY otherwise. Tombstones are reused by
+ * insert and cleared whenever the table is rehashed.
+ * 
+ * Capacity follows HashTableADT: it grows to 2 * capacity + 1 when the load
+ * factor threshold is reached. The slot arrays are that capacity rounded up to
+ * whole groups.
+ */
+public class SwissBookHashTable implements ScannableBookTable {
+    // initial value of the capacity if none is specified
+    static final int DEFAULT_CAPACITY = 101;
+    // initial load factor threshold if none is specified
+    static final double DEFAULT_LOAD_FACTOR_THRESHOLD = 0.875;
+    // control byte of a slot that was never used
+    static final byte EMPTY = (byte) 0x80;
+    // control byte of a slot whose key was removed
+    static final byte DELETED = (byte) 0xFE;
+    private static final int GROUP_SIZE = GroupMatcher.GROUP_SIZE;
+
+    // the Vector API matcher, null when jdk.incubator.vector is not available
+    static final GroupMatcher VECTOR_MATCHER = loadVectorMatcher();
+    // SWAR unless -Dswisstable.matcher=vector asks for the Vector API; on JDK 17
+    // the incubating API measured slower than SWAR (see HashTableBenchmark)
+    private static final GroupMatcher DEFAULT_MATCHER =
+            "vector".equals(System.getProperty("swisstable.matcher")) && VECTOR_MATCHER != null
+                    ? VECTOR_MATCHER : new SwarGroupMatcher();
+
+    private final GroupMatcher matcher;
+    private final double loadFactorThreshold;
+    private int capacity;
+    private int numKeys;
+    // number of DELETED control bytes
+    private int tombstones;
+    private byte[] ctrl;
+    private String[] keys;
+    private Book[] books;
+    private int numGroups;
+
+    /**
+     * Uses default capacity and load factor threshold
+     */
+    public SwissBookHashTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR_THRESHOLD);
+    }
+
+    /**
+     * @param initialCapacity the starting capacity, 1 or greater
+     * @param loadFactorThreshold the load factor at which the capacity grows
+     */
+    public SwissBookHashTable(int initialCapacity, double loadFactorThreshold) {
+        this(initialCapacity, loadFactorThreshold, DEFAULT_MATCHER);
+    }
+
+    // lets the benchmark and tests pick the matcher
+    SwissBookHashTable(int initialCapacity, double loadFactorThreshold, GroupMatcher matcher) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("initial capacity must be 1 or greater");
+        }
+        this.matcher = matcher;
+        this.loadFactorThreshold = loadFactorThreshold;
+        this.capacity = initialCapacity;
+        allocate(initialCapacity);
+    }
+
+    /**
+     * Try to load VectorGroupMatcher; it fails to link when the incubator
+     * module was not added to the running JVM
+     */
+    private static GroupMatcher loadVectorMatcher() {
+        try {
+            return (GroupMatcher) Class.forName("VectorGroupMatcher")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * return true if this table matches groups with the Vector API
+     */
+    public boolean usesVectorMatching() {
+        return !(matcher instanceof SwarGroupMatcher);
+    }
+
+    private void allocate(int forCapacity) {
+        numGroups = (forCapacity + GROUP_SIZE - 1) / GROUP_SIZE;
+        ctrl = new byte[numGroups * GROUP_SIZE];
+        Arrays.fill(ctrl, EMPTY);
+        keys = new String[ctrl.length];
+        books = new Book[ctrl.length];
+        tombstones = 0;
+    }
+
+    // String caches its hashCode, the mix spreads it over 64 bits
+    static long hash(String key) {
+        return KeyHash.mix(key.hashCode());
+    }
+
+    private static byte h2(long hash) {
+        return (byte) (hash & 0x7F);
+    }
+
+    private int firstGroup(long hash) {
+        return KeyHash.reduce(hash >>> 32, numGroups);
+    }
+
+    /**
+     * Find the slot holding key
+     * @return the slot, -1 if the key is not in the table
+     */
+    private int find(String key, long hash) {
+        byte h2 = h2(hash);
+        int group = firstGroup(hash);
+        for (int probes = 0; probes < numGroups; probes++) {
+            int offset = group * GROUP_SIZE;
+            int candidates = matcher.match(ctrl, offset, h2);
+            while (candidates != 0) {
+                int slot = offset + Integer.numberOfTrailingZeros(candidates);
+                if (key.equals(keys[slot])) {
+                    return slot;
+                }
+                candidates &= candidates - 1;
+            }
+            // an EMPTY slot ends the probe sequence
+            if (matcher.matchEmpty(ctrl, offset) != 0) {
+                return -1;
+            }
+            group = group + 1 == numGroups ? 0 : group + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first EMPTY or DELETED slot on the key's probe sequence
+     */
+    private int findInsertSlot(long hash) {
+        int group = firstGroup(hash);
+        while (true) {
+            int offset = group * GROUP_SIZE;
+            int free = matcher.matchEmptyOrDeleted(ctrl, offset);
+            if (free != 0) {
+                return offset + Integer.numberOfTrailingZeros(free);
+            }
+            group = group + 1 == numGroups ? 0 : group + 1;
+        }
+    }
+
+    /**
+     * Add the key,value pair to the data structure and increase the number of keys.
+     * If key is null, throw IllegalNullKeyException;
+     * If key is already in data structure, throw DuplicateKeyException();
+     */
+    @Override
+    public void insert(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long hash = hash(key);
+        if (find(key, hash) >= 0) {
+            throw new DuplicateKeyException();
+        }
+        if (numKeys > 0 && (double) numKeys / capacity >= loadFactorThreshold) {
+            rehash(capacity * 2 + 1);
+        } else if (numKeys + tombstones + 1 >= ctrl.length) {
+            // keep at least one EMPTY slot so that every probe ends; grow if the
+            // keys alone fill the slots, otherwise just clear the tombstones
+            rehash(numKeys + 1 >= ctrl.length ? capacity * 2 + 1 : capacity);
+        }
+        int slot = findInsertSlot(hash);
+        if (ctrl[slot] == DELETED) {
+            tombstones--;
+        }
+        ctrl[slot] = h2(hash);
+        keys[slot] = key;
+        books[slot] = value;
+        numKeys++;
+    }
+
+    /**
+     * If key is found, remove the key,value pair, decrease the number of keys and
+     * return true.
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, return false
+     */
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        int slot = find(key, hash(key));
+        if (slot < 0) {
+            return false;
+        }
+        int offset = slot - slot % GROUP_SIZE;
+        // a probe only passes a group that has no EMPTY slot
+        if (matcher.matchEmpty(ctrl, offset) != 0) {
+            ctrl[slot] = EMPTY;
+        } else {
+            ctrl[slot] = DELETED;
+            tombstones++;
+        }
+        keys[slot] = null;
+        books[slot] = null;
+        numKeys--;
+        return true;
+    }
+
+    /**
+     * Returns the value associated with the specified key
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, throw KeyNotFoundException().
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        int slot = find(key, hash(key));
+        if (slot < 0) {
+            throw new KeyNotFoundException();
+        }
+        return books[slot];
+    }
+
+    /**
+     * Look up a key given as any CharSequence without building a String; a miss
+     * returns null instead of throwing
+     * @return the book stored under that key, null if there is none
+     * @throws IllegalNullKeyException if key is null
+     */
+    @Override
+    public Book lookup(CharSequence key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long hash = KeyHash.mix(KeyHash.stringHashCode(key));
+        byte h2 = h2(hash);
+        int group = firstGroup(hash);
+        for (int probes = 0; probes < numGroups; probes++) {
+            int offset = group * GROUP_SIZE;
+            int candidates = matcher.match(ctrl, offset, h2);
+            while (candidates != 0) {
+                int slot = offset + Integer.numberOfTrailingZeros(candidates);
+                if (keys[slot].contentEquals(key)) {
+                    return books[slot];
+                }
+                candidates &= candidates - 1;
+            }
+            if (matcher.matchEmpty(ctrl, offset) != 0) {
+                return null;
+            }
+            group = group + 1 == numGroups ? 0 : group + 1;
+        }
+        return null;
+    }
+
+    /**
+     * return the number of slots
+     */
+    @Override
+    public int bucketCount() {
+        return ctrl.length;
+    }
+
+    /**
+     * Pass the books of the full slots fromBucket to toBucket - 1 to action
+     */
+    @Override
+    public void scanBuckets(int fromBucket, int toBucket, Consumer<Book> action) {
+        byte[] control = ctrl;
+        Book[] values = books;
+        for (int slot = fromBucket; slot < toBucket; slot++) {
+            if (control[slot] >= 0) {
+                action.accept(values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Move every key into fresh arrays sized for the given capacity
+     */
+    private void rehash(int newCapacity) {
+        ArrayList<Integer> full = new ArrayList<>(numKeys);
+        for (int slot = 0; slot < ctrl.length; slot++) {
+            if (ctrl[slot] >= 0) {
+                full.add(slot);
+            }
+        }
+        String[] oldKeys = keys;
+        Book[] oldBooks = books;
+        capacity = newCapacity;
+        allocate(newCapacity);
+        for (int slot : full) {
+            long hash = hash(oldKeys[slot]);
+            int target = findInsertSlot(hash);
+            ctrl[target] = h2(hash);
+            keys[target] = oldKeys[slot];
+            books[target] = oldBooks[slot];
+        }
+    }
+
+    /**
+     * return the number of keys in the hash table
+     */
+    @Override
+    public int numKeys() {
+        return numKeys;
+    }
+
+    /**
+     * return the load factor threshold of the hash table
+     */
+    @Override
+    public double getLoadFactorThreshold() {
+        return loadFactorThreshold;
+    }
+
+    /**
+     * return the capacity of the hash table; the slot arrays are this rounded
+     * up to a multiple of 16
+     */
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the collision resolution scheme used for this hash table.
+     * 11 OPEN ADDRESSING: SwissTable group probe
+     */
+    @Override
+    public int getCollisionResolutionScheme() {
+        return 11;
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the SwissTable-style implementation with both group matchers
+ */
+public class SwissBookHashTableTest {
+
+    static ArrayList<Book> bookTable;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Fill the table at a high load factor, remove half of it and refill, checking
+     * every key with both matchers
+     */
+    @Test
+    public void test000_high_load_with_removes() throws Exception {
+        GroupMatcher vector = SwissBookHashTable.VECTOR_MATCHER;
+        for (GroupMatcher matcher : new GroupMatcher[] {new SwarGroupMatcher(),
+                vector != null ? vector : new SwarGroupMatcher()}) {
+            SwissBookHashTable table = new SwissBookHashTable(2, 0.95, matcher);
+            for (Book book : bookTable) {
+                table.insert(book.getKey(), book);
+            }
+            assertEquals(bookTable.size(), table.numKeys());
+            for (int i = 0; i < bookTable.size(); i += 2) {
+                assertTrue(table.remove(bookTable.get(i).getKey()));
+            }
+            assertFalse(table.remove(bookTable.get(0).getKey()));
+            for (int i = 0; i < bookTable.size(); i++) {
+                try {
+                    assertEquals(bookTable.get(i), table.get(bookTable.get(i).getKey()));
+                    assertEquals(1, i % 2);
+                }
+                catch(KeyNotFoundException e) {
+                    assertEquals(0, i % 2);
+                }
+            }
+            for (int i = 0; i < bookTable.size(); i += 2) {
+                table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+            }
+            for (Book book : bookTable) {
+                assertEquals(book, table.get(book.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Capacity grows to 2 * capacity + 1 and duplicates are rejected
+     */
+    @Test
+    public void test001_adt_rules() throws Exception {
+        SwissBookHashTable table = new SwissBookHashTable(10, 0.8);
+        assertEquals(11, table.getCollisionResolutionScheme());
+        for (int i = 0; i < 9; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        assertEquals(21, table.getCapacity());
+        try {
+            table.insert(bookTable.get(3).getKey(), bookTable.get(3));
+            fail("DuplicateKeyException is not thrown");
+        }
+        catch(DuplicateKeyException e) {
+        }
+        try {
+            table.get(null);
+            fail("IllegalNullKeyException is not thrown");
+        }
+        catch(IllegalNullKeyException e) {
+        }
+    }
+
+    /**
+     * SWAR and Vector matching agree on random control bytes
+     */
+    @Test
+    public void test002_matchers_agree() {
+        GroupMatcher vector = SwissBookHashTable.VECTOR_MATCHER;
+        if (vector == null) {
+            return;
+        }
+        GroupMatcher swar = new SwarGroupMatcher();
+        Random rng = new Random(0);
+        byte[] values = {SwissBookHashTable.EMPTY, SwissBookHashTable.DELETED, 0, 1, 5, 0x7F};
+        byte[] ctrl = new byte[32];
+        for (int t = 0; t < 10000; t++) {
+            for (int i = 0; i < ctrl.length; i++) {
+                ctrl[i] = values[rng.nextInt(values.length)];
+            }
+            byte h2 = values[2 + rng.nextInt(4)];
+            assertEquals(vector.matchEmpty(ctrl, 16), swar.matchEmpty(ctrl, 16));
+            assertEquals(vector.matchEmptyOrDeleted(ctrl, 0),
+                    swar.matchEmptyOrDeleted(ctrl, 0));
+            // SWAR may report extra full slots, but never miss one
+            int exact = vector.match(ctrl, 0, h2);
+            assertEquals(exact, swar.match(ctrl, 0, h2) & exact);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in instrumentation for a hash table.
+ * 
+ * A table only owns a TableMetrics while metrics are enabled; while they are
+ * disabled the table keeps a null reference and the only cost on each operation
+ * is that null check. Counters are LongAdders so concurrent readers of the
+ * metrics never slow down the thread doing the work.
+ */
+public class TableMetrics implements TableMetricsMBean {
+    // how many resize events are remembered for the snapshot
+    static final int MAX_RESIZE_EVENTS = 64;
+
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder gets = new LongAdder();
+    private final LongAdder getMisses = new LongAdder();
+    private final LongAdder removes = new LongAdder();
+    private final LongAdder removeMisses = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final LongAdder resizeNanos = new LongAdder();
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram getLatency = new LatencyHistogram();
+    private final LatencyHistogram removeLatency = new LatencyHistogram();
+    // the most recent resizes, oldest first
+    private final ArrayDeque<MetricsSnapshot.ResizeEvent> resizeEvents = new ArrayDeque<>();
+    // reads the current chain length distribution from the owning table
+    private final Supplier<long[]> chainLengths;
+
+    /**
+     * @param chainLengths returns the live chain length distribution of the table,
+     *        element i being the number of buckets with i keys
+     */
+    public TableMetrics(Supplier<long[]> chainLengths) {
+        this.chainLengths = chainLengths;
+    }
+
+    public void recordInsert(long nanos) {
+        inserts.increment();
+        insertLatency.record(nanos);
+    }
+
+    public void recordGet(long nanos, boolean found) {
+        gets.increment();
+        if (!found) {
+            getMisses.increment();
+        }
+        getLatency.record(nanos);
+    }
+
+    public void recordRemove(long nanos, boolean removed) {
+        removes.increment();
+        if (!removed) {
+            removeMisses.increment();
+        }
+        removeLatency.record(nanos);
+    }
+
+    public void recordResize(int oldCapacity, int newCapacity, long nanos) {
+        resizes.increment();
+        resizeNanos.add(nanos);
+        synchronized (resizeEvents) {
+            if (resizeEvents.size() == MAX_RESIZE_EVENTS) {
+                resizeEvents.removeFirst();
+            }
+            resizeEvents.addLast(new MetricsSnapshot.ResizeEvent(oldCapacity, newCapacity,
+                    nanos, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Take an immutable copy of every counter and of the table's current chain
+     * length distribution
+     */
+    public MetricsSnapshot snapshot() {
+        ArrayList<MetricsSnapshot.ResizeEvent> events;
+        synchronized (resizeEvents) {
+            events = new ArrayList<>(resizeEvents);
+        }
+        return new MetricsSnapshot(inserts.sum(), gets.sum(), getMisses.sum(), removes.sum(),
+                removeMisses.sum(), new MetricsSnapshot.Latency(insertLatency),
+                new MetricsSnapshot.Latency(getLatency), new MetricsSnapshot.Latency(removeLatency),
+                resizes.sum(), resizeNanos.sum(), events,
+                chainLengths.get());
+    }
+
+    /**
+     * Register these metrics with the platform MBean server
+     * @param name the value of the name key, e.g. the table's purpose
+     * @return the ObjectName the metrics were registered under
+     * @throws JMException if the name is malformed or already taken
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = objectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * Remove metrics registered by registerMBean, does nothing if none are
+     * @param name the same name passed to registerMBean
+     */
+    public static void unregisterMBean(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName(name);
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("cs400.hashtable:type=TableMetrics,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public long getGets() {
+        return gets.sum();
+    }
+
+    @Override
+    public long getGetMisses() {
+        return getMisses.sum();
+    }
+
+    @Override
+    public double getMissRate() {
+        long n = gets.sum();
+        return n == 0 ? 0 : (double) getMisses.sum() / n;
+    }
+
+    @Override
+    public long getRemoves() {
+        return removes.sum();
+    }
+
+    @Override
+    public long getResizes() {
+        return resizes.sum();
+    }
+
+    @Override
+    public long getTotalResizeNanos() {
+        return resizeNanos.sum();
+    }
+
+    @Override
+    public long getLongestChain() {
+        return MetricsSnapshot.longestChain(chainLengths.get());
+    }
+
+    @Override
+    public double getAverageChainLength() {
+        return MetricsSnapshot.averageChainLength(chainLengths.get());
+    }
+
+    @Override
+    public long getInsertP99Nanos() {
+        return insertLatency.percentile(99);
+    }
+
+    @Override
+    public long getGetP99Nanos() {
+        return getLatency.percentile(99);
+    }
+
+    @Override
+    public long getRemoveP99Nanos() {
+        return removeLatency.percentile(99);
+    }
+
+    @Override
+    public void reset() {
+        inserts.reset();
+        gets.reset();
+        getMisses.reset();
+        removes.reset();
+        removeMisses.reset();
+        resizes.reset();
+        resizeNanos.reset();
+        insertLatency.reset();
+        getLatency.reset();
+        removeLatency.reset();
+        synchronized (resizeEvents) {
+            resizeEvents.clear();
+        }
+    }
+}
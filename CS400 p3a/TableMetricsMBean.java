@@ -0,0 +1,35 @@
+/**
+ * JMX view of a TableMetrics instance. Every attribute reads the live counter
+ * it names on its own, so attributes read one after the other may come from
+ * slightly different moments; use snapshot() for a set of values taken
+ * together.
+ */
+public interface TableMetricsMBean {
+
+    long getInserts();
+
+    long getGets();
+
+    long getGetMisses();
+
+    double getMissRate();
+
+    long getRemoves();
+
+    long getResizes();
+
+    long getTotalResizeNanos();
+
+    long getLongestChain();
+
+    double getAverageChainLength();
+
+    long getInsertP99Nanos();
+
+    long getGetP99Nanos();
+
+    long getRemoveP99Nanos();
+
+    // Clear all counters and histograms
+    void reset();
+}
@@ -0,0 +1,633 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A book table with a hot tier of Book objects and a cold tier of compressed
+ * blocks.
+ * 
+ * The hot tier holds at most hotCapacity books as ordinary objects. When it is
+ * full, a victim is picked by the clock (second chance) algorithm: books read
+ * since the hand last passed them are spared once. The victim is demoted: its
+ * books.csv row is appended to the open cold block. Every blockRows rows the
+ * block is sealed, deflated and kept in memory, or written to the spill file
+ * if the table has one.
+ * 
+ * Reading a cold book inflates its block (the last inflated block is cached, so
+ * neighbouring reads are cheap) and parses the row. Each cold key counts its
+ * reads, and after promoteAfter reads it is promoted back to the hot tier. The
+ * counts are halved every AGE_PERIOD cold reads per hot entry, so books read
+ * now and then over a long time do not all end up promoted.
+ * Blocks whose rows were mostly promoted or removed are rewritten: their live
+ * rows go to the open block and the old block is dropped. Space in the spill
+ * file is not reused.
+ * 
+ * New books go to the hot tier. Books must be stored under their own key, and
+ * their fields can not hold commas or line breaks, as in books.csv.
+ * 
+ * getStats reports the estimated heap per entry and the hit latency of both
+ * tiers. Like BookHashTable, this table is not thread safe; get changes the
+ * tiers.
+ */
+public class TieredBookTable implements DataStructureADT<String, Book>, AutoCloseable {
+    // rows per cold block
+    static final int DEFAULT_BLOCK_ROWS = 32;
+    // reads of a cold key that promote it
+    static final int DEFAULT_PROMOTE_AFTER = 2;
+    // cold reads per hot entry between two halvings of the read counts
+    static final int AGE_PERIOD = 10;
+
+    // a hot book and its clock slot
+    private static class HotEntry {
+        final Book book;
+        final int slot;
+        boolean referenced;
+
+        HotEntry(Book book, int slot) {
+            this.book = book;
+            this.slot = slot;
+        }
+    }
+
+    private final int hotCapacity;
+    private final int promoteAfter;
+    private final int blockRows;
+
+    // hot tier
+    private final HashMap<String, HotEntry> hot = new HashMap<>();
+    private final HotEntry[] clock;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int hand;
+
+    // cold tier: the index, then per block its deflated bytes (null when spilled
+    // or dropped), spill file offset, sizes and live rows
+    private final ColdIndex cold = new ColdIndex();
+    private byte[][] blockBytes = new byte[16][];
+    private long[] blockOffsets = new long[16];
+    private int[] blockLengths = new int[16];
+    private int[] blockRawLengths = new int[16];
+    private int[] blockRowCounts = new int[16];
+    private int[] blockLive = new int[16];
+    private int blockCount;
+    private int openBlock;
+    private ArrayList<String> openRows = new ArrayList<>();
+    private final FileChannel spill;
+    private long spillBytes;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    // the last inflated block
+    private int cachedBlock = -1;
+    private byte[] cachedRaw;
+
+    // reporting
+    private final LatencyHistogram hotLatency = new LatencyHistogram();
+    private final LatencyHistogram coldLatency = new LatencyHistogram();
+    private long promotions;
+    private long demotions;
+    private long blockReads;
+    private long blockRewrites;
+    private long coldReadsSinceAging;
+
+    /**
+     * A table keeping its cold blocks in memory
+     */
+    public TieredBookTable(int hotCapacity) {
+        this(hotCapacity, DEFAULT_PROMOTE_AFTER, DEFAULT_BLOCK_ROWS, (FileChannel) null);
+    }
+
+    /**
+     * @param hotCapacity the most books kept as objects
+     * @param promoteAfter the reads of a cold book that bring it back to the hot tier
+     * @param blockRows rows per compressed block
+     * @param spillFile where sealed blocks are written, or null to keep them in
+     * memory; the file is truncated
+     */
+    public TieredBookTable(int hotCapacity, int promoteAfter, int blockRows, Path spillFile)
+            throws IOException {
+        this(hotCapacity, promoteAfter, blockRows, spillFile == null ? null
+                : FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE));
+    }
+
+    private TieredBookTable(int hotCapacity, int promoteAfter, int blockRows,
+            FileChannel spill) {
+        if (hotCapacity < 1 || promoteAfter < 1 || blockRows < 1) {
+            throw new IllegalArgumentException(
+                    "hotCapacity, promoteAfter and blockRows must be positive");
+        }
+        this.hotCapacity = hotCapacity;
+        this.promoteAfter = promoteAfter;
+        this.blockRows = blockRows;
+        this.clock = new HotEntry[hotCapacity];
+        this.freeSlots = new int[hotCapacity];
+        for (int i = 0; i < hotCapacity; i++) {
+            freeSlots[i] = hotCapacity - 1 - i;
+        }
+        this.freeCount = hotCapacity;
+        this.spill = spill;
+        this.openBlock = newBlock();
+    }
+
+    @Override
+    public void insert(String key, Book value)
+            throws IllegalNullKeyException, DuplicateKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        if (value == null || !key.equals(value.getKey())) {
+            throw new IllegalArgumentException("the book must be stored under its own key");
+        }
+        if (hot.containsKey(key) || cold.indexOf(key) >= 0) {
+            throw new DuplicateKeyException();
+        }
+        putHot(value);
+    }
+
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        HotEntry entry = hot.get(key);
+        if (entry != null) {
+            removeHot(entry);
+            return true;
+        }
+        int slot = cold.indexOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        removeCold(slot);
+        return true;
+    }
+
+    /**
+     * Get a book; a cold book read often enough is promoted to the hot tier
+     * @throws UncheckedIOException if the spill file can not be read
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        long start = System.nanoTime();
+        HotEntry entry = hot.get(key);
+        if (entry != null) {
+            entry.referenced = true;
+            hotLatency.record(System.nanoTime() - start);
+            return entry.book;
+        }
+        int slot = cold.indexOf(key);
+        if (slot < 0) {
+            throw new KeyNotFoundException();
+        }
+        Book book = BookParser.parseLine(findRow(cold.block(slot), key));
+        int reads = cold.hit(slot);
+        coldLatency.record(System.nanoTime() - start);
+        if (++coldReadsSinceAging == (long) AGE_PERIOD * hotCapacity) {
+            cold.age();
+            coldReadsSinceAging = 0;
+        }
+        if (reads >= promoteAfter) {
+            removeCold(slot);
+            putHot(book);
+            promotions++;
+        }
+        return book;
+    }
+
+    @Override
+    public int numKeys() {
+        return hot.size() + cold.size();
+    }
+
+    /**
+     * true if the key is in the hot tier
+     */
+    public boolean isHot(String key) {
+        return hot.containsKey(key);
+    }
+
+    /**
+     * Close the spill file
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    // ---- hot tier ----
+
+    private void putHot(Book book) {
+        if (hot.size() >= hotCapacity) {
+            HotEntry victim = victim();
+            removeHot(victim);
+            appendCold(BookParser.format(victim.book), victim.book.getKey());
+            demotions++;
+        }
+        HotEntry entry = new HotEntry(book, freeSlots[--freeCount]);
+        clock[entry.slot] = entry;
+        hot.put(book.getKey(), entry);
+    }
+
+    private void removeHot(HotEntry entry) {
+        hot.remove(entry.book.getKey());
+        clock[entry.slot] = null;
+        freeSlots[freeCount++] = entry.slot;
+    }
+
+    // the first entry not read since the hand last passed it
+    private HotEntry victim() {
+        while (true) {
+            HotEntry entry = clock[hand];
+            hand = (hand + 1) % clock.length;
+            if (entry != null) {
+                if (!entry.referenced) {
+                    return entry;
+                }
+                entry.referenced = false;
+            }
+        }
+    }
+
+    // ---- cold tier ----
+
+    private int newBlock() {
+        if (blockCount == blockBytes.length) {
+            int n = blockCount * 2;
+            blockBytes = Arrays.copyOf(blockBytes, n);
+            blockOffsets = Arrays.copyOf(blockOffsets, n);
+            blockLengths = Arrays.copyOf(blockLengths, n);
+            blockRawLengths = Arrays.copyOf(blockRawLengths, n);
+            blockRowCounts = Arrays.copyOf(blockRowCounts, n);
+            blockLive = Arrays.copyOf(blockLive, n);
+        }
+        return blockCount++;
+    }
+
+    private void appendCold(String row, String key) {
+        openRows.add(row);
+        cold.add(key, openBlock);
+        blockLive[openBlock]++;
+        if (openRows.size() == blockRows) {
+            seal();
+        }
+    }
+
+    // compress the open block and start a new one
+    private void seal() {
+        int block = openBlock;
+        openBlock = newBlock();
+        ArrayList<String> rows = openRows;
+        openRows = new ArrayList<>();
+        if (rows.isEmpty()) {
+            dropBlock(block);
+            return;
+        }
+        byte[] raw = String.join("\n", rows).getBytes(StandardCharsets.UTF_8);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] out = new byte[raw.length + raw.length / 8 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        blockRawLengths[block] = raw.length;
+        blockLengths[block] = length;
+        blockRowCounts[block] = rows.size();
+        if (spill == null) {
+            blockBytes[block] = Arrays.copyOf(out, length);
+        } else {
+            try {
+                blockOffsets[block] = spillBytes;
+                ByteBuffer buffer = ByteBuffer.wrap(out, 0, length);
+                while (buffer.hasRemaining()) {
+                    spillBytes += spill.write(buffer, spillBytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void removeCold(int slot) {
+        int block = cold.block(slot);
+        String key = cold.key(slot);
+        cold.removeAt(slot);
+        blockLive[block]--;
+        if (block == openBlock) {
+            // the open block only ever holds live rows
+            openRows.remove(findRow(block, key));
+            return;
+        }
+        if (blockLive[block] == 0) {
+            dropBlock(block);
+        } else if (blockLive[block] * 2 < blockRowCounts[block]) {
+            rewrite(block);
+        }
+    }
+
+    // move the live rows of a mostly dead block to the open block
+    private void rewrite(int block) {
+        for (String row : rows(block)) {
+            int slot = cold.indexOf(row.substring(0, row.indexOf(',')));
+            if (slot >= 0 && cold.block(slot) == block) {
+                openRows.add(row);
+                cold.setBlock(slot, openBlock);
+                blockLive[openBlock]++;
+                if (openRows.size() == blockRows) {
+                    seal();
+                }
+            }
+        }
+        dropBlock(block);
+        blockRewrites++;
+    }
+
+    private void dropBlock(int block) {
+        blockBytes[block] = null;
+        blockLive[block] = 0;
+        blockRowCounts[block] = 0;
+        if (cachedBlock == block) {
+            cachedBlock = -1;
+            cachedRaw = null;
+        }
+    }
+
+    private String findRow(int block, String key) {
+        if (block == openBlock) {
+            for (String row : openRows) {
+                if (row.length() > key.length() && row.charAt(key.length()) == ','
+                        && row.startsWith(key)) {
+                    return row;
+                }
+            }
+        } else {
+            // only the row asked for is decoded, not the whole block
+            byte[] raw = inflate(block);
+            byte[] prefix = (key + ",").getBytes(StandardCharsets.UTF_8);
+            for (int start = 0; start < raw.length;) {
+                int end = start;
+                while (end < raw.length && raw[end] != '\n') {
+                    end++;
+                }
+                if (end - start > prefix.length && Arrays.equals(raw, start,
+                        start + prefix.length, prefix, 0, prefix.length)) {
+                    return new String(raw, start, end - start, StandardCharsets.UTF_8);
+                }
+                start = end + 1;
+            }
+        }
+        throw new IllegalStateException("row of " + key + " missing from block " + block);
+    }
+
+    // the rows of a sealed block
+    private String[] rows(int block) {
+        return new String(inflate(block), StandardCharsets.UTF_8).split("\n");
+    }
+
+    /**
+     * Inflate a whole block
+     * @param rawLength the length the block had before it was deflated
+     * @throws IllegalStateException if the block is corrupt or shorter than
+     *         rawLength, as from a damaged spill file
+     */
+    static byte[] inflateBlock(Inflater inflater, byte[] packed, int rawLength, int block) {
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(packed);
+        try {
+            int length = 0;
+            while (length < raw.length) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                // no progress and nothing more to read: the stream ended early
+                if (n == 0 && (inflater.needsInput() || inflater.finished()
+                        || inflater.needsDictionary())) {
+                    throw new IllegalStateException("corrupt block " + block + ": "
+                            + length + " of " + raw.length + " bytes");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt block " + block, e);
+        }
+        return raw;
+    }
+
+    // the contents of a sealed block, read from the spill file if needed and
+    // inflated
+    private byte[] inflate(int block) {
+        if (block == cachedBlock) {
+            return cachedRaw;
+        }
+        byte[] packed = blockBytes[block];
+        if (packed == null) {
+            packed = new byte[blockLengths[block]];
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(packed);
+                long position = blockOffsets[block];
+                while (buffer.hasRemaining()) {
+                    int n = spill.read(buffer, position + buffer.position());
+                    if (n < 0) {
+                        throw new IOException("spill file truncated");
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        byte[] raw = inflateBlock(inflater, packed, blockRawLengths[block], block);
+        blockReads++;
+        cachedBlock = block;
+        cachedRaw = raw;
+        return raw;
+    }
+
+    // ---- reporting ----
+
+    /**
+     * Sizes and latencies of both tiers. Walks every entry, so it is meant for
+     * reporting, not for hot paths.
+     */
+    public Stats getStats() {
+        // book, map node, table slot, HotEntry and clock slots
+        long hotBytes = 0;
+        for (HotEntry entry : hot.values()) {
+            hotBytes += HeapSize.bookBytes(entry.book) + 32 + 8 + 24 + 8;
+        }
+        long coldBytes = cold.arrayBytes() + 6 * (16 + 8L * blockBytes.length);
+        for (int slot = 0; slot < cold.capacity(); slot++) {
+            coldBytes += HeapSize.stringBytes(cold.key(slot));
+        }
+        for (int block = 0; block < blockCount; block++) {
+            if (blockBytes[block] != null) {
+                coldBytes += HeapSize.align(16 + blockBytes[block].length);
+            }
+        }
+        for (String row : openRows) {
+            coldBytes += HeapSize.stringBytes(row);
+        }
+        return new Stats(hot.size(), cold.size(), hotBytes, coldBytes, spillBytes,
+                promotions, demotions, blockReads, blockRewrites, hotLatency, coldLatency);
+    }
+
+    /**
+     * Load a catalogue with a hot tier of a tenth of it, read it with a skewed
+     * access pattern and print the report of both tiers:
+     *   java TieredBookTable books.csv [spill file]
+     */
+    public static void main(String[] args) throws Exception {
+        ArrayList<Book> books = BookParser.parse(args.length > 0 ? args[0] : "books.csv");
+        Path spillFile = args.length > 1 ? Path.of(args[1]) : null;
+        try (TieredBookTable table = new TieredBookTable(books.size() / 10,
+                DEFAULT_PROMOTE_AFTER, DEFAULT_BLOCK_ROWS, spillFile)) {
+            for (Book book : books) {
+                table.insert(book.getKey(), book);
+            }
+            System.out.println("after loading:");
+            System.out.println(table.getStats());
+            // nine reads in ten go to the first tenth of the catalogue
+            Random random = new Random(42);
+            int popular = books.size() / 10;
+            for (int i = 0; i < 2_000_000; i++) {
+                int index = random.nextInt(10) < 9 ? random.nextInt(popular)
+                        : random.nextInt(books.size());
+                table.get(books.get(index).getKey());
+            }
+            long eager = 0;
+            for (Book book : books) {
+                eager += HeapSize.bookBytes(book);
+            }
+            System.out.println("after 2M skewed reads:");
+            System.out.println(table.getStats());
+            System.out.printf("all books as objects: %.0f bytes/entry%n",
+                    (double) eager / books.size());
+        }
+    }
+
+    /**
+     * A report of both tiers
+     */
+    public static class Stats {
+        private final int hotEntries;
+        private final int coldEntries;
+        private final long hotBytes;
+        private final long coldHeapBytes;
+        private final long coldDiskBytes;
+        private final long promotions;
+        private final long demotions;
+        private final long blockReads;
+        private final long blockRewrites;
+        private final LatencyHistogram hotLatency;
+        private final LatencyHistogram coldLatency;
+
+        Stats(int hotEntries, int coldEntries, long hotBytes, long coldHeapBytes,
+                long coldDiskBytes, long promotions, long demotions, long blockReads,
+                long blockRewrites, LatencyHistogram hotLatency, LatencyHistogram coldLatency) {
+            this.hotEntries = hotEntries;
+            this.coldEntries = coldEntries;
+            this.hotBytes = hotBytes;
+            this.coldHeapBytes = coldHeapBytes;
+            this.coldDiskBytes = coldDiskBytes;
+            this.promotions = promotions;
+            this.demotions = demotions;
+            this.blockReads = blockReads;
+            this.blockRewrites = blockRewrites;
+            this.hotLatency = hotLatency;
+            this.coldLatency = coldLatency;
+        }
+
+        public int getHotEntries() {
+            return hotEntries;
+        }
+
+        public int getColdEntries() {
+            return coldEntries;
+        }
+
+        /**
+         * estimated heap of the hot tier per hot entry
+         */
+        public double getHotBytesPerEntry() {
+            return hotEntries == 0 ? 0 : (double) hotBytes / hotEntries;
+        }
+
+        /**
+         * estimated heap of the cold tier per cold entry, without the spill file
+         */
+        public double getColdBytesPerEntry() {
+            return coldEntries == 0 ? 0 : (double) coldHeapBytes / coldEntries;
+        }
+
+        /**
+         * bytes written to the spill file
+         */
+        public long getColdDiskBytes() {
+            return coldDiskBytes;
+        }
+
+        public long getPromotions() {
+            return promotions;
+        }
+
+        public long getDemotions() {
+            return demotions;
+        }
+
+        /**
+         * the number of blocks inflated to answer reads
+         */
+        public long getBlockReads() {
+            return blockReads;
+        }
+
+        public long getBlockRewrites() {
+            return blockRewrites;
+        }
+
+        /**
+         * latencies of the gets answered by the hot tier
+         */
+        public LatencyHistogram getHotLatency() {
+            return hotLatency;
+        }
+
+        /**
+         * latencies of the gets answered by the cold tier
+         */
+        public LatencyHistogram getColdLatency() {
+            return coldLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hot: %d entries, %.0f bytes/entry, hit p50 %d ns p99 %d ns%n"
+                    + "cold: %d entries, %.0f heap bytes/entry, %d spilled bytes,"
+                    + " hit p50 %d ns p99 %d ns%n"
+                    + "promotions %d, demotions %d, blocks inflated %d, blocks rewritten %d",
+                    hotEntries, getHotBytesPerEntry(), hotLatency.percentile(50),
+                    hotLatency.percentile(99), coldEntries, getColdBytesPerEntry(),
+                    coldDiskBytes, coldLatency.percentile(50), coldLatency.percentile(99),
+                    promotions, demotions, blockReads, blockRewrites);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test demotion, promotion and the compressed cold tier of TieredBookTable
+ */
+public class TieredBookTableTest {
+
+    static ArrayList<Book> books;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    // every book reads back with the same fields
+    private static void checkContents(TieredBookTable table) throws Exception {
+        assertEquals(books.size(), table.numKeys());
+        for (Book book : books) {
+            assertEquals(BookParser.format(book), BookParser.format(table.get(book.getKey())));
+        }
+    }
+
+    /**
+     * Check that books beyond the hot capacity are kept compressed and read back
+     * intact, and that a cold entry costs far less heap than a hot one
+     */
+    @Test
+    public void test001_cold_tier_in_memory() throws Exception {
+        try (TieredBookTable table = new TieredBookTable(500)) {
+            for (Book book : books) {
+                table.insert(book.getKey(), book);
+            }
+            TieredBookTable.Stats stats = table.getStats();
+            assertEquals(500, stats.getHotEntries());
+            assertEquals(books.size() - 500, stats.getColdEntries());
+            assertTrue(stats.getColdBytesPerEntry() * 3 < stats.getHotBytesPerEntry(),
+                    stats.toString());
+            checkContents(table);
+            stats = table.getStats();
+            assertTrue(stats.getPromotions() == 0 && stats.getBlockReads() > 0);
+            assertTrue(stats.getColdLatency().count() > 0 && stats.getHotLatency().count() > 0);
+        }
+    }
+
+    /**
+     * Check that a cold book read twice is promoted, and that the clock spares a
+     * hot book read since the hand last passed
+     */
+    @Test
+    public void test002_promotion_and_clock() throws Exception {
+        try (TieredBookTable table = new TieredBookTable(3)) {
+            for (int i = 0; i < 3; i++) {
+                table.insert(books.get(i).getKey(), books.get(i));
+            }
+            table.get(books.get(0).getKey());
+            // demotes book 1, the first one not read
+            table.insert(books.get(3).getKey(), books.get(3));
+            assertTrue(table.isHot(books.get(0).getKey()));
+            assertFalse(table.isHot(books.get(1).getKey()));
+
+            table.get(books.get(1).getKey());
+            assertFalse(table.isHot(books.get(1).getKey()));
+            table.get(books.get(1).getKey());
+            assertTrue(table.isHot(books.get(1).getKey()));
+            assertEquals(4, table.numKeys());
+            assertEquals(1, table.getStats().getPromotions());
+        }
+    }
+
+    /**
+     * Check the spill file, removals and replacing a cold book
+     */
+    @Test
+    public void test003_spill_file_and_removal() throws Exception {
+        Path file = dir.resolve("cold.blocks");
+        try (TieredBookTable table = new TieredBookTable(200, 2, 32, file)) {
+            for (Book book : books) {
+                table.insert(book.getKey(), book);
+            }
+            assertTrue(Files.size(file) > 0);
+            assertTrue(table.getStats().getColdDiskBytes() == Files.size(file));
+            checkContents(table);
+
+            // remove most books, forcing blocks to be rewritten
+            for (int i = 0; i < books.size(); i++) {
+                if (i % 4 != 0) {
+                    assertTrue(table.remove(books.get(i).getKey()));
+                }
+            }
+            assertFalse(table.remove(books.get(1).getKey()));
+            assertTrue(table.getStats().getBlockRewrites() > 0);
+            for (int i = 0; i < books.size(); i += 4) {
+                assertEquals(BookParser.format(books.get(i)),
+                        BookParser.format(table.get(books.get(i).getKey())));
+            }
+
+            // a replaced book reads back as the new version, hot or cold
+            Book old = books.get(8);
+            table.remove(old.getKey());
+            Book changed = new Book(old.getKey(), old.getAuthors(),
+                    old.getOriginalPublicationYear(), "A New Title", old.getLanguageCode(),
+                    old.getAverageRating(), old.getCoverType(), old.getPages());
+            table.insert(changed.getKey(), changed);
+            for (int i = 0; i < 1000; i++) {
+                table.insert("x" + i, new Book("x" + i, "", "", "", "", "", "", ""));
+            }
+            assertFalse(table.isHot(changed.getKey()));
+            assertEquals("A New Title", table.get(changed.getKey()).getTitle());
+            try {
+                table.insert(changed.getKey(), changed);
+                fail("a duplicate key should be rejected");
+            } catch (DuplicateKeyException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Check that a block that inflates to fewer bytes than recorded, or whose
+     * deflated bytes were cut short, is reported instead of read forever
+     */
+    @Test
+    public void test004_short_block_is_corrupt() throws Exception {
+        byte[] raw = BookParser.format(books.get(0)).getBytes("UTF-8");
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] packed = new byte[raw.length + 64];
+        int packedLength = deflater.deflate(packed);
+        deflater.end();
+        packed = Arrays.copyOf(packed, packedLength);
+        Inflater inflater = new Inflater();
+        assertTrue(Arrays.equals(raw,
+                TieredBookTable.inflateBlock(inflater, packed, raw.length, 0)));
+        try {
+            TieredBookTable.inflateBlock(inflater, packed, raw.length + 1, 7);
+            fail("IllegalStateException is not thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("corrupt block 7"), e.getMessage());
+        }
+        try {
+            TieredBookTable.inflateBlock(inflater, Arrays.copyOf(packed, packedLength / 2),
+                    raw.length, 8);
+            fail("IllegalStateException is not thrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("corrupt block 8"), e.getMessage());
+        }
+        inflater.end();
+    }
+}
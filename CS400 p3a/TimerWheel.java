@@ -0,0 +1,228 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel: LEVELS wheels of SLOTS slots each, every level
+ * SLOTS times coarser than the one below.
+ * 
+ * A timer is put in the finest level whose slot still tells it apart from the
+ * current tick, in O(1). Advancing the clock by a tick empties one level 0 slot;
+ * each time a coarser wheel turns over one slot, its timers are redistributed
+ * into the finer levels ("cascading"). A timer therefore moves at most LEVELS
+ * times before it fires, so scheduling, cancelling and expiring all cost O(1)
+ * per timer, whatever the number of timers. Timers beyond the range of the top
+ * level wait in the top level and are rescheduled each time it turns over.
+ * Ticks on which no slot would be emptied or cascaded are skipped, so a long
+ * idle period costs a few slot scans rather than a loop over every tick.
+ * 
+ * Timers fire exactly: a timer in the slot of the current tick fires only once
+ * its deadline has passed. Not thread safe.
+ */
+final class TimerWheel<N extends TimerWheel.Node> {
+    static final int LEVELS = 4;
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * A timer, to be extended by the objects that expire. A node is in at most
+     * one slot at a time, linked into the slot's circular list.
+     */
+    abstract static class Node {
+        long deadline;
+        Node prev;
+        Node next;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    // the list heads of every slot
+    private static final class Head extends Node {
+        Head() {
+            prev = this;
+            next = this;
+        }
+    }
+
+    private final long tickNanos;
+    private final Head[] slots = new Head[LEVELS * SLOTS];
+    // per top level slot, no timer in it is due before this tick; cancelling
+    // leaves it low, which only costs a needless stop
+    private final long[] topEarliestTicks = new long[SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tickNanos the length of one tick
+     * @param now the current time, in the same nanoseconds as the deadlines
+     */
+    TimerWheel(long tickNanos, long now) {
+        if (tickNanos < 1) {
+            throw new IllegalArgumentException("tickNanos must be positive");
+        }
+        this.tickNanos = tickNanos;
+        this.currentTick = Math.floorDiv(now, tickNanos);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Head();
+        }
+        Arrays.fill(topEarliestTicks, Long.MAX_VALUE);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Start a timer
+     * @param deadline when it fires, in nanoseconds
+     */
+    void schedule(N node, long deadline) {
+        if (node.isScheduled()) {
+            cancel(node);
+        }
+        node.deadline = deadline;
+        link(node);
+        size++;
+    }
+
+    /**
+     * Stop a timer, if it is running
+     */
+    void cancel(N node) {
+        if (node.isScheduled()) {
+            unlink(node);
+            size--;
+        }
+    }
+
+    /**
+     * Fire every timer whose deadline is at or before now
+     * @param expired called with each timer that fired, already unscheduled
+     */
+    @SuppressWarnings("unchecked")
+    void advance(long now, Consumer<N> expired) {
+        long nowTick = Math.floorDiv(now, tickNanos);
+        while (currentTick < nowTick) {
+            // every timer of a past tick has expired
+            Head head = slots[(int) (currentTick & (SLOTS - 1))];
+            while (head.next != head) {
+                Node node = head.next;
+                unlink(node);
+                size--;
+                expired.accept((N) node);
+            }
+            // jump over the ticks with nothing to fire or cascade
+            currentTick = Math.min(nextBusyTick(), nowTick);
+            cascade();
+        }
+        // the timers of the current tick fire as their deadlines pass
+        Head head = slots[(int) (currentTick & (SLOTS - 1))];
+        for (Node node = head.next; node != head;) {
+            Node next = node.next;
+            if (node.deadline <= now) {
+                unlink(node);
+                size--;
+                expired.accept((N) node);
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Find the first tick after the current one that has work to do: a level 0
+     * slot to empty or a coarser slot to cascade. A timer on level l is always
+     * in the current turn of level l + 1 and in a slot past the current one, so
+     * the first busy slot of the finest level that has one comes first. Only
+     * the top level wraps, its timers may be waiting for a later turn; a slot
+     * is passed over until the turn in which its earliest timer is due.
+     * @return the tick, Long.MAX_VALUE if no timer is scheduled
+     */
+    private long nextBusyTick() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        for (int level = 0; level < LEVELS - 1; level++) {
+            int shift = level * SLOT_BITS;
+            int current = (int) ((currentTick >>> shift) & (SLOTS - 1));
+            for (int slot = current + 1; slot < SLOTS; slot++) {
+                Head head = slots[level * SLOTS + slot];
+                if (head.next != head) {
+                    long turn = currentTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+                    return turn | ((long) slot << shift);
+                }
+            }
+        }
+        int shift = (LEVELS - 1) * SLOT_BITS;
+        long turn = currentTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+        long next = Long.MAX_VALUE;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            Head head = slots[(LEVELS - 1) * SLOTS + slot];
+            if (head.next != head) {
+                long tick = turn | ((long) slot << shift);
+                if (tick <= currentTick) {
+                    tick += 1L << (shift + SLOT_BITS);
+                }
+                // earlier turns would only put the slot's timers back in it
+                tick = Math.max(tick, topEarliestTicks[slot] >>> shift << shift);
+                next = Math.min(next, tick);
+            }
+        }
+        return next;
+    }
+
+    // redistribute the coarser slots that the current tick just reached
+    private void cascade() {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            int shift = level * SLOT_BITS;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                continue;
+            }
+            int slot = (int) ((currentTick >>> shift) & (SLOTS - 1));
+            Head head = slots[level * SLOTS + slot];
+            if (level == LEVELS - 1) {
+                topEarliestTicks[slot] = Long.MAX_VALUE;
+            }
+            // detach the whole list first, a far timer may go back to this slot
+            Node node = head.next;
+            head.prev.next = null;
+            head.next = head;
+            head.prev = head;
+            while (node != null && node != head) {
+                Node next = node.next;
+                node.prev = null;
+                node.next = null;
+                link(node);
+                node = next;
+            }
+        }
+    }
+
+    private void link(Node node) {
+        long tick = Math.max(currentTick, Math.floorDiv(node.deadline, tickNanos));
+        int level = LEVELS - 1;
+        for (int l = 0; l < LEVELS - 1; l++) {
+            int above = (l + 1) * SLOT_BITS;
+            if ((tick >>> above) == (currentTick >>> above)) {
+                level = l;
+                break;
+            }
+        }
+        int slot = (int) ((tick >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        if (level == LEVELS - 1) {
+            topEarliestTicks[slot] = Math.min(topEarliestTicks[slot], tick);
+        }
+        Head head = slots[level * SLOTS + slot];
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    private static void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Keeps the best k books of every group from a stream of books, such as the
+ * best rated titles of each language.
+ * 
+ * Each group has a heap of at most k books with its worst book on top; a new
+ * book only goes in by replacing that worst book. So the memory used is k books
+ * per group however many books pass through, and each book costs O(log k).
+ */
+public class TopKBooks {
+    private final Function<Book, String> groupBy;
+    private final Comparator<Book> order;
+    private final int k;
+    private final HashMap<String, PriorityQueue<Book>> groups = new HashMap<>();
+
+    /**
+     * @param groupBy the group of a book, such as Book::getLanguageCode
+     * @param order best first, such as ExternalBookSorter.BEST_RATED_FIRST
+     * @param k how many books to keep per group
+     */
+    public TopKBooks(Function<Book, String> groupBy, Comparator<Book> order, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.groupBy = groupBy;
+        this.order = order;
+        this.k = k;
+    }
+
+    /**
+     * Offer one book
+     */
+    public void add(Book book) {
+        PriorityQueue<Book> best = groups.computeIfAbsent(String.valueOf(groupBy.apply(book)),
+                group -> new PriorityQueue<>(k, order.reversed()));
+        if (best.size() < k) {
+            best.add(book);
+        } else if (order.compare(book, best.peek()) < 0) {
+            best.poll();
+            best.add(book);
+        }
+    }
+
+    /**
+     * the group names, sorted
+     */
+    public List<String> groups() {
+        ArrayList<String> names = new ArrayList<>(groups.keySet());
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * the best books of a group, best first
+     */
+    public List<Book> top(String group) {
+        PriorityQueue<Book> best = groups.get(group);
+        ArrayList<Book> books = best == null ? new ArrayList<>() : new ArrayList<>(best);
+        books.sort(order);
+        return books;
+    }
+
+    /**
+     * Write the books.csv header, then the best books of every group, groups in
+     * name order and each group best first
+     * @return the number of books written
+     */
+    public long write(Writer out) throws IOException {
+        out.write(BookParser.HEADER);
+        out.write('\n');
+        long n = 0;
+        for (String group : groups()) {
+            for (Book book : top(group)) {
+                out.write(BookParser.format(book));
+                out.write('\n');
+                n++;
+            }
+        }
+        return n;
+    }
+}
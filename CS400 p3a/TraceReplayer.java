@@ -0,0 +1,382 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Replays a BookTrace against any table and reports throughput and latency.
+ * 
+ * With one thread the operations run in recorded order. With several, every key
+ * is given to one thread (by a hash of the key), so the operations on each key
+ * still run in recorded order, and every operation has the outcome it had when
+ * it was recorded; the replay counts the ones that do not, which shows a table
+ * behaving differently from the recorded one. The table must be thread safe for
+ * more than one thread; locked() makes any table so.
+ * 
+ * At maximum rate every thread issues its next operation as soon as the last
+ * one returned, and latency is the time of the call. At the recorded rate each
+ * operation is issued at its recorded time after the start, and its latency
+ * counts from that time, so a table that falls behind sees its queueing delay
+ * in the latencies (no coordinated omission).
+ */
+public class TraceReplayer {
+
+    /**
+     * The measurements of one replay
+     */
+    public static class Result {
+        private final int operations;
+        private final long nanos;
+        private final long mismatches;
+        private final LatencyHistogram[] latencies;
+
+        Result(int operations, long nanos, long mismatches, LatencyHistogram[] latencies) {
+            this.operations = operations;
+            this.nanos = nanos;
+            this.mismatches = mismatches;
+            this.latencies = latencies;
+        }
+
+        public int getOperations() {
+            return operations;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getThroughput() {
+            return operations * 1e9 / nanos;
+        }
+
+        /**
+         * the number of operations whose outcome differs from the recorded one
+         */
+        public long getMismatches() {
+            return mismatches;
+        }
+
+        /**
+         * @param operation BookTrace.INSERT, GET or REMOVE
+         */
+        public LatencyHistogram getLatency(int operation) {
+            return latencies[operation];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(
+                    "%d ops in %.1f ms, %.0f ops/s, %d mismatches", operations, nanos / 1e6,
+                    getThroughput(), mismatches));
+            String[] names = {"insert", "get", "remove"};
+            for (int op = 0; op < names.length; op++) {
+                LatencyHistogram latency = latencies[op];
+                if (latency.count() > 0) {
+                    text.append(String.format("%n  %-6s n=%d mean %.0f ns p50 %d p99 %d"
+                            + " p99.9 %d max %d", names[op], latency.count(), latency.mean(),
+                            latency.percentile(50), latency.percentile(99),
+                            latency.percentile(99.9), latency.max()));
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    private final BookTrace trace;
+    private final Function<String, Book> books;
+
+    /**
+     * @param books supplies the book inserted under each key
+     */
+    public TraceReplayer(BookTrace trace, Function<String, Book> books) {
+        this.trace = trace;
+        this.books = books;
+    }
+
+    /**
+     * Books from a catalogue by key, and a book with only a key for keys that are
+     * not in it
+     */
+    public static Function<String, Book> catalogue(List<Book> catalogue) {
+        HashMap<String, Book> byKey = new HashMap<>();
+        for (Book book : catalogue) {
+            byKey.put(book.getKey(), book);
+        }
+        return key -> {
+            Book book = byKey.get(key);
+            return book != null ? book : new Book(key, "", "", "", "", "", "", "");
+        };
+    }
+
+    /**
+     * A view of a table with every call synchronized on the table
+     */
+    public static DataStructureADT<String, Book> locked(DataStructureADT<String, Book> table) {
+        return new DataStructureADT<String, Book>() {
+            @Override
+            public void insert(String key, Book value)
+                    throws IllegalNullKeyException, DuplicateKeyException {
+                synchronized (table) {
+                    table.insert(key, value);
+                }
+            }
+
+            @Override
+            public boolean remove(String key) throws IllegalNullKeyException {
+                synchronized (table) {
+                    return table.remove(key);
+                }
+            }
+
+            @Override
+            public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+                synchronized (table) {
+                    return table.get(key);
+                }
+            }
+
+            @Override
+            public int numKeys() {
+                synchronized (table) {
+                    return table.numKeys();
+                }
+            }
+        };
+    }
+
+    /**
+     * Run the whole trace against a table
+     * @param threads the number of threads issuing operations
+     * @param recordedRate true to issue operations at their recorded times, false
+     * to issue them as fast as the table takes them
+     */
+    public Result replay(DataStructureADT<String, Book> table, int threads,
+            boolean recordedRate) throws InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        // the operations of each thread, in trace order
+        int[][] work = new int[threads][];
+        int[] counts = new int[threads];
+        int[] owner = new int[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            owner[i] = KeyHash.reduce(KeyHash.mix(trace.keyId(i)) >>> 32, threads);
+            counts[owner[i]]++;
+        }
+        for (int t = 0; t < threads; t++) {
+            work[t] = new int[counts[t]];
+            counts[t] = 0;
+        }
+        for (int i = 0; i < trace.size(); i++) {
+            work[owner[i]][counts[owner[i]]++] = i;
+        }
+        // the books to insert, looked up before the clock starts
+        Book[] values = new Book[trace.size()];
+        for (int i = 0; i < trace.size(); i++) {
+            if (trace.operation(i) == BookTrace.INSERT && trace.key(i) != null) {
+                values[i] = books.apply(trace.key(i));
+            }
+        }
+
+        LatencyHistogram[] latencies = {new LatencyHistogram(), new LatencyHistogram(),
+                new LatencyHistogram()};
+        LongAdder mismatches = new LongAdder();
+        AtomicLong start = new AtomicLong();
+        CyclicBarrier ready = new CyclicBarrier(threads, () -> start.set(System.nanoTime()));
+        List<Throwable> failures = new ArrayList<>();
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int[] mine = work[t];
+            Thread worker = new Thread(() -> {
+                try {
+                    ready.await();
+                    run(table, mine, values, start.get(), recordedRate, latencies, mismatches);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "trace-replay-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - start.get();
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("replay failed", failures.get(0));
+        }
+        return new Result(trace.size(), nanos, mismatches.sum(), latencies);
+    }
+
+    private void run(DataStructureADT<String, Book> table, int[] operations, Book[] values,
+            long start, boolean recordedRate, LatencyHistogram[] latencies,
+            LongAdder mismatches) {
+        for (int i : operations) {
+            long issued;
+            if (recordedRate) {
+                issued = start + trace.time(i);
+                waitUntil(issued);
+            } else {
+                issued = System.nanoTime();
+            }
+            int op = trace.operation(i);
+            int outcome = apply(table, op, trace.key(i), values[i]);
+            latencies[op].record(System.nanoTime() - issued);
+            if (outcome != trace.outcome(i)) {
+                mismatches.increment();
+            }
+        }
+    }
+
+    private static int apply(DataStructureADT<String, Book> table, int op, String key,
+            Book value) {
+        try {
+            switch (op) {
+                case BookTrace.INSERT:
+                    table.insert(key, value);
+                    return BookTrace.OK;
+                case BookTrace.GET:
+                    table.get(key);
+                    return BookTrace.OK;
+                case BookTrace.REMOVE:
+                    return table.remove(key) ? BookTrace.OK : BookTrace.MISS;
+                default:
+                    throw new IllegalStateException("unknown operation " + op);
+            }
+        } catch (DuplicateKeyException | KeyNotFoundException e) {
+            return BookTrace.MISS;
+        } catch (IllegalNullKeyException e) {
+            return BookTrace.NULL_KEY;
+        }
+    }
+
+    private static void waitUntil(long deadline) {
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            if (left > 100_000) {
+                LockSupport.parkNanos(left - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Write a skewed workload over a catalogue, as RecordingBookTable would record
+     * it: the catalogue is loaded, then nine operations in ten are reads, most of
+     * them of a small share of popular books and some of missing keys, at a
+     * steady rate, broken by bursts that remove a run of books and insert them
+     * back ten times faster.
+     * @param operations the number of operations after loading
+     * @param opsPerSecond the steady rate
+     */
+    static void generate(List<Book> catalogue, Path file, int operations, int opsPerSecond,
+            long seed) throws IOException {
+        Random random = new Random(seed);
+        long[] now = {0};
+        try (RecordingBookTable table = new RecordingBookTable(new BookHashTable(),
+                Files.newOutputStream(file), () -> now[0])) {
+            long gap = 1_000_000_000L / opsPerSecond;
+            for (Book book : catalogue) {
+                now[0] += gap;
+                table.insert(book.getKey(), book);
+            }
+            int n = catalogue.size();
+            for (int done = 0; done < operations;) {
+                if (random.nextInt(2000) == 0) {
+                    // a burst of removes and reinserts
+                    int from = random.nextInt(n);
+                    int length = Math.min(n - from, 50 + random.nextInt(200));
+                    for (int pass = 0; pass < 2; pass++) {
+                        for (int i = from; i < from + length; i++) {
+                            now[0] += gap / 10;
+                            Book book = catalogue.get(i);
+                            try {
+                                if (pass == 0) {
+                                    table.remove(book.getKey());
+                                } else {
+                                    table.insert(book.getKey(), book);
+                                }
+                            } catch (DuplicateKeyException e) {
+                                // recorded like any other outcome
+                            }
+                        }
+                    }
+                    done += 2 * length;
+                    continue;
+                }
+                now[0] += gap;
+                // cubing a uniform number puts most reads on the first books
+                double skew = random.nextDouble();
+                String key = random.nextInt(50) == 0 ? "978-missing-" + random.nextInt(n)
+                        : catalogue.get((int) (n * skew * skew * skew)).getKey();
+                try {
+                    table.get(key);
+                } catch (KeyNotFoundException e) {
+                    // recorded like any other outcome
+                }
+                done++;
+            }
+        } catch (IllegalNullKeyException | DuplicateKeyException e) {
+            throw new IllegalStateException("catalogue keys must be unique and not null", e);
+        }
+    }
+
+    /**
+     * Replay a trace against each table implementation:
+     *   java TraceReplayer books.csv trace.bin [threads] [max|recorded]
+     * A trace file that does not exist is first generated with a skewed workload.
+     */
+    public static void main(String[] args) throws Exception {
+        ArrayList<Book> catalogue = BookParser.parse(args.length > 0 ? args[0] : "books.csv");
+        Path file = Path.of(args.length > 1 ? args[1] : "trace.bin");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        boolean recordedRate = args.length > 3 && args[3].equals("recorded");
+        if (!Files.exists(file)) {
+            generate(catalogue, file, 1_000_000, 200_000, 42);
+        }
+        BookTrace trace = BookTrace.read(file);
+        System.out.printf("%s: %d ops (%d inserts, %d gets, %d removes), %d keys, %d bytes,"
+                + " %.1f s recorded%n", file, trace.size(), trace.count(BookTrace.INSERT),
+                trace.count(BookTrace.GET), trace.count(BookTrace.REMOVE),
+                trace.distinctKeys(), Files.size(file),
+                trace.time(trace.size() - 1) / 1e9);
+        TraceReplayer replayer = new TraceReplayer(trace, catalogue(catalogue));
+        // the first pass only warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            LinkedHashMap<String, DataStructureADT<String, Book>> tables = new LinkedHashMap<>();
+            tables.put("BookHashTable", new BookHashTable());
+            tables.put("SwissBookHashTable", new SwissBookHashTable());
+            tables.put("TieredBookTable", new TieredBookTable(catalogue.size() / 10));
+            for (Map.Entry<String, DataStructureADT<String, Book>> table : tables.entrySet()) {
+                Result result = replayer.replay(threads > 1 ? locked(table.getValue())
+                        : table.getValue(), threads, recordedRate);
+                if (pass == 1) {
+                    System.out.println(table.getKey() + ": " + result);
+                }
+            }
+            if (threads > 1) {
+                ShardedBookTable sharded = new ShardedBookTable();
+                for (int i = 0; i < threads; i++) {
+                    sharded.addPartition("p" + i, new LocalPartition());
+                }
+                Result result = replayer.replay(sharded, threads, recordedRate);
+                if (pass == 1) {
+                    System.out.println("ShardedBookTable: " + result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test recording a trace and replaying it
+ */
+public class TraceReplayerTest {
+
+    static ArrayList<Book> books;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        books = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Check that every operation and its outcome is recorded and read back
+     */
+    @Test
+    public void test001_record_and_read() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (RecordingBookTable table = new RecordingBookTable(new BookHashTable(), bytes)) {
+            table.insert(books.get(0).getKey(), books.get(0));
+            table.get(books.get(0).getKey());
+            try {
+                table.insert(books.get(0).getKey(), books.get(0));
+                fail("a duplicate key should be rejected");
+            } catch (DuplicateKeyException e) {
+                // expected, and recorded
+            }
+            try {
+                table.get(null);
+                fail("a null key should be rejected");
+            } catch (IllegalNullKeyException e) {
+                // expected, and recorded
+            }
+            table.remove(books.get(0).getKey());
+            table.remove(books.get(0).getKey());
+            assertEquals(6, table.getRecords());
+        }
+        BookTrace trace = BookTrace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(6, trace.size());
+        assertEquals(1, trace.distinctKeys());
+        int[] ops = {BookTrace.INSERT, BookTrace.GET, BookTrace.INSERT, BookTrace.GET,
+                BookTrace.REMOVE, BookTrace.REMOVE};
+        int[] outcomes = {BookTrace.OK, BookTrace.OK, BookTrace.MISS, BookTrace.NULL_KEY,
+                BookTrace.OK, BookTrace.MISS};
+        for (int i = 0; i < ops.length; i++) {
+            assertEquals(ops[i], trace.operation(i), "operation " + i);
+            assertEquals(outcomes[i], trace.outcome(i), "outcome " + i);
+        }
+        assertNull(trace.key(3));
+        assertEquals(books.get(0).getKey(), trace.key(5));
+        // a key is spelled out once, later records are a few bytes each
+        assertTrue(bytes.size() < 5 + 6 * 8 + books.get(0).getKey().length());
+    }
+
+    /**
+     * Check that a generated skewed trace replays with the recorded outcomes,
+     * single threaded, multi threaded and at the recorded rate
+     */
+    @Test
+    public void test002_replay() throws Exception {
+        Path file = dir.resolve("trace.bin");
+        TraceReplayer.generate(books, file, 50_000, 2_000_000, 1);
+        BookTrace trace = BookTrace.read(file);
+        assertTrue(trace.size() >= books.size() + 50_000);
+        assertTrue(trace.count(BookTrace.GET) > trace.count(BookTrace.REMOVE) * 5);
+        // compact: far fewer bytes than operations times key length
+        assertTrue(Files.size(file) < trace.size() * 6L + books.size() * 20L);
+
+        TraceReplayer replayer = new TraceReplayer(trace, TraceReplayer.catalogue(books));
+        TraceReplayer.Result single = replayer.replay(new SwissBookHashTable(), 1, false);
+        assertEquals(0, single.getMismatches());
+        assertEquals(trace.count(BookTrace.GET), single.getLatency(BookTrace.GET).count());
+
+        TraceReplayer.Result multi = replayer.replay(
+                TraceReplayer.locked(new BookHashTable()), 4, false);
+        assertEquals(0, multi.getMismatches());
+
+        TraceReplayer.Result paced = replayer.replay(
+                TraceReplayer.locked(new BookHashTable()), 2, true);
+        assertEquals(0, paced.getMismatches());
+        assertTrue(paced.getNanos() >= trace.time(trace.size() - 1));
+    }
+}
@@ -0,0 +1,33 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Group matching with the incubating Vector API: the 16 control bytes of a
+ * group are loaded into one 128-bit vector and compared in a single step.
+ * 
+ * Needs --add-modules jdk.incubator.vector at compile and run time. The class
+ * is only loaded by reflection from SwissBookHashTable, and only used when
+ * -Dswisstable.matcher=vector is set; without the module the table falls back
+ * to SwarGroupMatcher.
+ */
+class VectorGroupMatcher implements GroupMatcher {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+    private static final byte EMPTY = (byte) 0x80;
+
+    @Override
+    public int match(byte[] ctrl, int offset, byte h2) {
+        return (int) ByteVector.fromArray(SPECIES, ctrl, offset).eq(h2).toLong();
+    }
+
+    @Override
+    public int matchEmpty(byte[] ctrl, int offset) {
+        return (int) ByteVector.fromArray(SPECIES, ctrl, offset).eq(EMPTY).toLong();
+    }
+
+    @Override
+    public int matchEmptyOrDeleted(byte[] ctrl, int offset) {
+        return (int) ByteVector.fromArray(SPECIES, ctrl, offset)
+                .compare(VectorOperators.LT, (byte) 0).toLong();
+    }
+}
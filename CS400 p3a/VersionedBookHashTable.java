@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+
+/**
+ * A copy-on-write table of books keyed by ISBN, built on a persistent hash array
+ * mapped trie (see BookTrie).
+ * 
+ * The current version is an immutable BookTableSnapshot held in a volatile
+ * field. Readers (get, numKeys, snapshot) only read that field, so they never
+ * lock and always see one consistent version. Writers are serialized by a lock,
+ * build the next version by path copying and publish it with a single write of
+ * the field. A Batch groups many inserts and removes into one version that
+ * readers see all at once or not at all, e.g. a full catalogue reload while the
+ * old catalogue keeps serving traffic.
+ */
+public class VersionedBookHashTable implements DataStructureADT<String, Book> {
+
+    // the published version, replaced as a whole on every write
+    private volatile BookTableSnapshot current = BookTableSnapshot.EMPTY;
+    // serializes writers, readers never take it
+    private final Object writeLock = new Object();
+
+    /**
+     * Add the key,value pair and publish a new version.
+     * If key is null, throw IllegalNullKeyException;
+     * If key is already in data structure, throw DuplicateKeyException();
+     */
+    @Override
+    public void insert(String key, Book value) throws IllegalNullKeyException, DuplicateKeyException {
+        Batch batch = beginBatch();
+        batch.insert(key, value);
+        batch.commit();
+    }
+
+    /**
+     * If key is found, remove it, publish a new version and return true.
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, return false
+     */
+    @Override
+    public boolean remove(String key) throws IllegalNullKeyException {
+        if (key == null) {
+            throw new IllegalNullKeyException();
+        }
+        synchronized (writeLock) {
+            BookTableSnapshot base = current;
+            BookTrie.Change change = new BookTrie.Change();
+            Object root = BookTrie.remove(base.root(), 0, BookTrie.hash(key), key, change);
+            if (change.previous == null) {
+                return false;
+            }
+            current = new BookTableSnapshot(root, base.numKeys() - 1, base.getVersion() + 1);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the value associated with the specified key in the current version
+     * If key is null, throw IllegalNullKeyException
+     * If key is not found, throw KeyNotFoundException().
+     */
+    @Override
+    public Book get(String key) throws IllegalNullKeyException, KeyNotFoundException {
+        return current.get(key);
+    }
+
+    /**
+     * return the number of keys in the current version
+     */
+    @Override
+    public int numKeys() {
+        return current.numKeys();
+    }
+
+    /**
+     * return the current version in O(1); it never changes afterwards
+     */
+    public BookTableSnapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Start a batch of changes on top of whatever version is current when the
+     * batch is committed
+     */
+    public Batch beginBatch() {
+        return new Batch();
+    }
+
+    /**
+     * A group of changes published as one version. Operations are only recorded
+     * until commit(); commit() applies them in order and publishes the result,
+     * or publishes nothing if any of them fails.
+     */
+    public class Batch {
+        // operation codes
+        private static final int INSERT = 0;
+        private static final int PUT = 1;
+        private static final int REMOVE = 2;
+        private static final int CLEAR = 3;
+
+        private final ArrayList<Integer> kinds = new ArrayList<>();
+        private final ArrayList<String> keys = new ArrayList<>();
+        private final ArrayList<Book> values = new ArrayList<>();
+        private boolean committed;
+
+        private Batch() {
+        }
+
+        /**
+         * Add a new key; commit() fails with DuplicateKeyException if it exists by then
+         */
+        public Batch insert(String key, Book value) throws IllegalNullKeyException {
+            return record(INSERT, key, value);
+        }
+
+        /**
+         * Add a key or replace the book already stored under it
+         */
+        public Batch put(String key, Book value) throws IllegalNullKeyException {
+            return record(PUT, key, value);
+        }
+
+        /**
+         * Remove a key, nothing happens if it is absent
+         */
+        public Batch remove(String key) throws IllegalNullKeyException {
+            return record(REMOVE, key, null);
+        }
+
+        /**
+         * Drop every key recorded so far and every key of the base version, so the
+         * batch rebuilds the table from nothing
+         */
+        public Batch clear() {
+            if (committed) {
+                throw new IllegalStateException("batch already committed");
+            }
+            kinds.add(CLEAR);
+            keys.add(null);
+            values.add(null);
+            return this;
+        }
+
+        private Batch record(int kind, String key, Book value) throws IllegalNullKeyException {
+            if (key == null) {
+                throw new IllegalNullKeyException();
+            }
+            if (committed) {
+                throw new IllegalStateException("batch already committed");
+            }
+            kinds.add(kind);
+            keys.add(key);
+            values.add(value);
+            return this;
+        }
+
+        /**
+         * Apply every recorded change to the current version and publish the
+         * result as the next version
+         * @return the version that was published
+         * @throws DuplicateKeyException if an insert found its key already present;
+         *         nothing is published in that case
+         */
+        public BookTableSnapshot commit() throws DuplicateKeyException {
+            if (committed) {
+                throw new IllegalStateException("batch already committed");
+            }
+            synchronized (writeLock) {
+                BookTableSnapshot base = current;
+                Object root = base.root();
+                int numKeys = base.numKeys();
+                for (int i = 0; i < kinds.size(); i++) {
+                    int kind = kinds.get(i);
+                    if (kind == CLEAR) {
+                        root = BookTrie.EMPTY;
+                        numKeys = 0;
+                        continue;
+                    }
+                    String key = keys.get(i);
+                    int hash = BookTrie.hash(key);
+                    BookTrie.Change change = new BookTrie.Change();
+                    if (kind == REMOVE) {
+                        root = BookTrie.remove(root, 0, hash, key, change);
+                        if (change.previous != null) {
+                            numKeys--;
+                        }
+                        continue;
+                    }
+                    if (kind == INSERT && BookTrie.get(root, key, hash) != null) {
+                        throw new DuplicateKeyException();
+                    }
+                    root = BookTrie.put(root, 0, hash, key, values.get(i), change);
+                    if (change.added) {
+                        numKeys++;
+                    }
+                }
+                committed = true;
+                current = new BookTableSnapshot(root, numKeys, base.getVersion() + 1);
+                return current;
+            }
+        }
+    }
+}
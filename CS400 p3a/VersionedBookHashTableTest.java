@@ -0,0 +1,115 @@
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test the copy-on-write table and its snapshots
+ */
+public class VersionedBookHashTableTest {
+
+    static ArrayList<Book> bookTable;
+
+    @BeforeAll
+    public static void beforeClass() throws Exception {
+        bookTable = BookParser.parse(BookHashTableTest.BOOKS);
+    }
+
+    /**
+     * Insert and remove the whole catalogue and check every key along the way
+     */
+    @Test
+    public void test000_insert_get_remove_all() throws Exception {
+        VersionedBookHashTable table = new VersionedBookHashTable();
+        for (Book book : bookTable) {
+            table.insert(book.getKey(), book);
+        }
+        assertEquals(bookTable.size(), table.numKeys());
+        for (Book book : bookTable) {
+            assertEquals(book, table.get(book.getKey()));
+        }
+        for (int i = 0; i < bookTable.size(); i += 2) {
+            assertTrue(table.remove(bookTable.get(i).getKey()));
+        }
+        assertFalse(table.remove(bookTable.get(0).getKey()));
+        for (int i = 0; i < bookTable.size(); i++) {
+            assertEquals(i % 2 == 1, table.snapshot().containsKey(bookTable.get(i).getKey()));
+        }
+        for (int i = 1; i < bookTable.size(); i += 2) {
+            assertTrue(table.remove(bookTable.get(i).getKey()));
+        }
+        assertEquals(0, table.numKeys());
+    }
+
+    /**
+     * A snapshot keeps seeing its own version after later writes
+     */
+    @Test
+    public void test001_snapshot_is_isolated() throws Exception {
+        VersionedBookHashTable table = new VersionedBookHashTable();
+        for (int i = 0; i < 100; i++) {
+            table.insert(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        BookTableSnapshot before = table.snapshot();
+        table.remove(bookTable.get(0).getKey());
+        table.insert(bookTable.get(100).getKey(), bookTable.get(100));
+        assertEquals(100, before.numKeys());
+        assertEquals(bookTable.get(0), before.get(bookTable.get(0).getKey()));
+        assertFalse(before.containsKey(bookTable.get(100).getKey()));
+        assertEquals(before.getVersion() + 2, table.snapshot().getVersion());
+        try {
+            before.insert(bookTable.get(200).getKey(), bookTable.get(200));
+            fail("UnsupportedOperationException is not thrown");
+        }
+        catch(UnsupportedOperationException e) {
+        }
+    }
+
+    /**
+     * A batch is published as a whole, or not at all when one insert fails
+     */
+    @Test
+    public void test002_batch_is_atomic() throws Exception {
+        VersionedBookHashTable table = new VersionedBookHashTable();
+        table.insert(bookTable.get(0).getKey(), bookTable.get(0));
+        BookTableSnapshot before = table.snapshot();
+        VersionedBookHashTable.Batch batch = table.beginBatch();
+        batch.insert(bookTable.get(1).getKey(), bookTable.get(1));
+        batch.insert(bookTable.get(0).getKey(), bookTable.get(0));
+        try {
+            batch.commit();
+            fail("DuplicateKeyException is not thrown");
+        }
+        catch(DuplicateKeyException e) {
+        }
+        assertTrue(before == table.snapshot());
+
+        batch = table.beginBatch().clear();
+        for (int i = 10; i < 20; i++) {
+            batch.put(bookTable.get(i).getKey(), bookTable.get(i));
+        }
+        batch.commit();
+        assertEquals(10, table.numKeys());
+        assertFalse(table.snapshot().containsKey(bookTable.get(0).getKey()));
+        assertEquals(1, before.numKeys());
+        // a committed batch takes no more changes
+        try {
+            batch.clear();
+            fail("IllegalStateException is not thrown");
+        }
+        catch(IllegalStateException e) {
+        }
+        try {
+            batch.remove(bookTable.get(10).getKey());
+            fail("IllegalStateException is not thrown");
+        }
+        catch(IllegalStateException e) {
+        }
+        assertEquals(10, table.numKeys());
+    }
+}